@@ -0,0 +1,73 @@
+package ca.stellardrift.mcannouncer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongepowered.gradle.vanilla.internal.model.VersionDescriptor;
+import org.spongepowered.gradle.vanilla.internal.util.GsonUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and comparing a single pair of version descriptors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DescriptorBenchmark {
+    private String json;
+    private byte[] bytes;
+    private CompactDescriptor original;
+    private CompactDescriptor modified;
+    private byte[] originalAssets;
+    private byte[] modifiedAssets;
+
+    @Setup
+    public void setup() throws IOException {
+        this.json = Fixtures.descriptor(1000, 0);
+        this.bytes = this.json.getBytes(StandardCharsets.UTF_8);
+        this.original = CompactDescriptor.parse(this.bytes);
+        this.modified = CompactDescriptor.parse(Fixtures.descriptor(1000, 1).getBytes(StandardCharsets.UTF_8));
+        this.originalAssets = Fixtures.assetIndex(5000, 0);
+        this.modifiedAssets = Fixtures.assetIndex(5000, 1);
+    }
+
+    @Benchmark
+    public CompactDescriptor parse() throws IOException {
+        return CompactDescriptor.parse(this.bytes);
+    }
+
+    @Benchmark
+    public VersionDescriptor.Full parseGson() {
+        return GsonUtils.GSON.fromJson(this.json, VersionDescriptor.Full.class);
+    }
+
+    @Benchmark
+    public ManifestState.LibraryChanges populateLibraries() {
+        return ManifestState.populateLibraries(this.original.libraries(), this.modified.libraries());
+    }
+
+    @Benchmark
+    public List<String> populateDownloads() {
+        return ManifestState.populateDownloads(this.original.downloads(), this.modified.downloads(), true);
+    }
+
+    @Benchmark
+    public AssetIndexDiff diffAssetIndex() throws IOException {
+        return AssetIndexDiff.compare(this.originalAssets, this.modifiedAssets);
+    }
+
+}
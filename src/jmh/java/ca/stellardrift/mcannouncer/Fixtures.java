@@ -0,0 +1,312 @@
+package ca.stellardrift.mcannouncer;
+
+import ca.stellardrift.mcannouncer.util.Hashes;
+import com.google.gson.stream.JsonWriter;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Synthetic manifests, descriptors and reports shaped like Mojang's real documents.
+ */
+final class Fixtures {
+    static final Instant EPOCH = Instant.parse("2012-01-01T00:00:00Z");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ssxxx").withZone(ZoneOffset.UTC);
+    private static final String[] OPERATING_SYSTEMS = {"linux", "osx", "windows"};
+    private static final String[] LWJGL_MODULES = {"lwjgl", "lwjgl-freetype", "lwjgl-glfw", "lwjgl-jemalloc", "lwjgl-openal", "lwjgl-opengl", "lwjgl-stb", "lwjgl-tinyfd"};
+
+    private Fixtures() {
+    }
+
+    static String versionId(final int version) {
+        return version % 10 == 0 ? "1." + (version / 10) : (version / 10) + "w" + (version % 10) + "a";
+    }
+
+    static String versionType(final int version) {
+        return version % 10 == 0 ? "release" : "snapshot";
+    }
+
+    static String time(final int version, final int revision) {
+        return TIME_FORMAT.format(EPOCH.plusSeconds(version * 3600L + revision * 60L));
+    }
+
+    /**
+     * Produce a version manifest, listing versions newest first.
+     *
+     * @param from the oldest version, inclusive
+     * @param to the newest version, exclusive
+     * @param revisions the revision of each version's descriptor
+     * @param describedFrom versions at or above this have hashes matching their {@link #descriptor(int, int)}
+     * @return the encoded manifest
+     */
+    static byte[] manifest(final int from, final int to, final IntUnaryOperator revisions, final int describedFrom) {
+        final StringWriter out = new StringWriter((to - from) * 300);
+        try (final JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("latest").beginObject();
+            int latestRelease = to - 1;
+            while (latestRelease % 10 != 0) {
+                latestRelease--;
+            }
+            writer.name("release").value(versionId(latestRelease));
+            writer.name("snapshot").value(versionId(to - 1));
+            writer.endObject();
+
+            writer.name("versions").beginArray();
+            for (int version = to - 1; version >= from; version--) {
+                final int revision = revisions.applyAsInt(version);
+                final String id = versionId(version);
+                final String sha1 = version >= describedFrom
+                    ? Hashes.toHex(Hashes.sha1(descriptor(version, revision).getBytes(StandardCharsets.UTF_8)))
+                    : Hashes.toHex(Hashes.sha1((id + ':' + revision).getBytes(StandardCharsets.UTF_8)));
+                writer.beginObject();
+                writer.name("id").value(id);
+                writer.name("type").value(versionType(version));
+                writer.name("url").value("https://piston-meta.mojang.com/v1/packages/" + sha1 + '/' + id + ".json");
+                writer.name("time").value(time(version, revision));
+                writer.name("releaseTime").value(time(version, 0));
+                writer.name("sha1").value(sha1);
+                writer.name("complianceLevel").value(1);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Produce a version descriptor resembling a modern client release.
+     *
+     * <p>Later revisions bump a handful of library versions and change the
+     * hashes of each download, like a re-released version would.</p>
+     *
+     * @param version the version number
+     * @param revision the revision of the descriptor
+     * @return the descriptor JSON
+     */
+    static String descriptor(final int version, final int revision) {
+        final String id = versionId(version);
+        final StringWriter out = new StringWriter(32 * 1024);
+        try (final JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("arguments").beginObject();
+            writer.name("game").beginArray();
+            for (final String argument : new String[] {"--username", "${auth_player_name}", "--version", "${version_name}", "--gameDir", "${game_directory}", "--assetsDir", "${assets_root}", "--assetIndex", "${assets_index_name}", "--uuid", "${auth_uuid}", "--accessToken", "${auth_access_token}"}) {
+                writer.value(argument);
+            }
+            writer.beginObject();
+            writer.name("rules").beginArray().beginObject().name("action").value("allow").name("features").beginObject().name("is_demo_user").value(true).endObject().endObject().endArray();
+            writer.name("value").value("--demo");
+            writer.endObject();
+            writer.endArray();
+            writer.name("jvm").beginArray();
+            writer.beginObject();
+            writer.name("rules").beginArray().beginObject().name("action").value("allow").name("os").beginObject().name("name").value("osx").endObject().endObject().endArray();
+            writer.name("value").beginArray().value("-XstartOnFirstThread").endArray();
+            writer.endObject();
+            writer.value("-Djava.library.path=${natives_directory}").value("-cp").value("${classpath}");
+            writer.endArray();
+            writer.endObject();
+
+            writer.name("assetIndex").beginObject();
+            writer.name("id").value(String.valueOf(version / 10));
+            writer.name("sha1").value(sha1("assets", version / 10, 0));
+            writer.name("size").value(400_000 + version);
+            writer.name("totalSize").value(600_000_000L + version);
+            writer.name("url").value("https://piston-meta.mojang.com/v1/packages/" + sha1("assets", version / 10, 0) + '/' + (version / 10) + ".json");
+            writer.endObject();
+            writer.name("assets").value(String.valueOf(version / 10));
+            writer.name("complianceLevel").value(1);
+
+            writer.name("downloads").beginObject();
+            for (final String download : new String[] {"client", "client_mappings", "server", "server_mappings"}) {
+                final String sha1 = sha1(download, version, revision);
+                writer.name(download).beginObject();
+                writer.name("sha1").value(sha1);
+                writer.name("size").value(20_000_000 + version + revision);
+                writer.name("url").value("https://piston-data.mojang.com/v1/objects/" + sha1 + '/' + download + (download.endsWith("_mappings") ? ".txt" : ".jar"));
+                writer.endObject();
+            }
+            writer.endObject();
+
+            writer.name("id").value(id);
+            writer.name("javaVersion").beginObject().name("component").value("java-runtime-delta").name("majorVersion").value(21).endObject();
+
+            writer.name("libraries").beginArray();
+            for (int library = 0; library < 60; library++) {
+                // a few libraries move with each revision
+                final int libraryVersion = library % 15 == 0 ? revision : 0;
+                writeLibrary(writer, "com.example.lib" + library, "library-" + library, "1." + library + '.' + libraryVersion, null);
+            }
+            for (final String module : LWJGL_MODULES) {
+                writeLibrary(writer, "org.lwjgl", module, "3.3." + (3 + revision), null);
+                for (final String os : OPERATING_SYSTEMS) {
+                    writeLibrary(writer, "org.lwjgl", module, "3.3." + (3 + revision), os);
+                }
+            }
+            writer.endArray();
+
+            writer.name("logging").beginObject().name("client").beginObject();
+            writer.name("argument").value("-Dlog4j.configurationFile=${path}");
+            writer.name("file").beginObject()
+                .name("id").value("client-1.12.xml")
+                .name("sha1").value(sha1("logging", 0, 0))
+                .name("size").value(888)
+                .name("url").value("https://piston-data.mojang.com/v1/objects/" + sha1("logging", 0, 0) + "/client-1.12.xml")
+                .endObject();
+            writer.name("type").value("log4j2-xml");
+            writer.endObject().endObject();
+
+            writer.name("mainClass").value("net.minecraft.client.main.Main");
+            writer.name("minimumLauncherVersion").value(21);
+            writer.name("releaseTime").value(time(version, 0));
+            writer.name("time").value(time(version, revision));
+            writer.name("type").value(versionType(version));
+            writer.endObject();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Produce an asset index.
+     *
+     * <p>Each revision changes the hash of every tenth object, drops a few
+     * objects and adds as many new ones.</p>
+     *
+     * @param objects the number of objects
+     * @param revision the revision of the index
+     * @return the index JSON
+     */
+    static byte[] assetIndex(final int objects, final int revision) {
+        final String[] directories = {"minecraft/sounds/ambient", "minecraft/sounds/block", "minecraft/sounds/mob", "minecraft/lang", "minecraft/textures/gui", "icons", "realms/textures"};
+        final StringWriter out = new StringWriter(objects * 100);
+        try (final JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("objects").beginObject();
+            for (int object = revision * 5; object < objects + revision * 5; object++) {
+                final String path = directories[object % directories.length] + "/object_" + object + ".ogg";
+                writer.name(path).beginObject();
+                writer.name("hash").value(sha1(path, object % 10 == 0 ? revision : 0, 0));
+                writer.name("size").value(1000 + object);
+                writer.endObject();
+            }
+            writer.endObject();
+            writer.endObject();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a jar resembling a client jar.
+     *
+     * <p>Most entries are classes, with a resource for every tenth. Each
+     * revision changes the contents of every seventh entry, drops a few
+     * entries and adds as many new ones.</p>
+     *
+     * @param file the file to write to
+     * @param entries the number of entries
+     * @param entrySize the size of each entry, in bytes
+     * @param revision the revision of the jar
+     * @throws IOException if the jar could not be written
+     */
+    static void jar(final Path file, final int entries, final int entrySize, final int revision) throws IOException {
+        final byte[] contents = new byte[entrySize];
+        try (final ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.setLevel(Deflater.BEST_SPEED);
+            for (int entry = revision * 20; entry < entries + revision * 20; entry++) {
+                final String name = entry % 10 == 0
+                    ? "assets/minecraft/textures/block/block_" + entry + ".png"
+                    : "net/minecraft/" + (char) ('a' + entry % 26) + "/Class" + entry + ".class";
+                new Random(entry * 31L + (entry % 7 == 0 ? revision : 0)).nextBytes(contents);
+                out.putNextEntry(new ZipEntry(name));
+                out.write(contents);
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static void writeLibrary(final JsonWriter writer, final String group, final String artifact, final String version, final @Nullable String os) throws IOException {
+        final String path = group.replace('.', '/') + '/' + artifact + '/' + version + '/' + artifact + '-' + version + (os == null ? "" : "-natives-" + os) + ".jar";
+        final String sha1 = sha1(path, 0, 0);
+        writer.beginObject();
+        writer.name("downloads").beginObject().name("artifact").beginObject()
+            .name("path").value(path)
+            .name("sha1").value(sha1)
+            .name("size").value(100_000 + path.length())
+            .name("url").value("https://libraries.minecraft.net/" + path)
+            .endObject().endObject();
+        writer.name("name").value(group + ':' + artifact + ':' + version + (os == null ? "" : ":natives-" + os));
+        if (os != null) {
+            writer.name("rules").beginArray().beginObject()
+                .name("action").value("allow")
+                .name("os").beginObject().name("name").value(os).endObject()
+                .endObject().endArray();
+        }
+        writer.endObject();
+    }
+
+    private static String sha1(final String kind, final int version, final int revision) {
+        return Hashes.toHex(Hashes.sha1((kind + ':' + version + ':' + revision).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Produce reports resembling the output of a busy poll.
+     *
+     * @param count the number of reports
+     * @return the reports
+     */
+    static List<ComparisonReport> reports(final int count) {
+        final List<ComparisonReport> reports = new ArrayList<>(count);
+        for (int report = 0; report < count; report++) {
+            final Map<String, List<String>> sections = new LinkedHashMap<>();
+            // vary the size of each report, so packing has something to do
+            final List<String> libraries = new ArrayList<>();
+            for (int library = 0; library < (report * 7) % 40; library++) {
+                libraries.add("- `com.example.lib" + library + ":library-" + library + "`: `1." + library + ".0` -> `1." + library + ".1`");
+            }
+            final List<String> downloads = new ArrayList<>();
+            for (final String download : new String[] {"client", "client_mappings", "server", "server_mappings"}) {
+                downloads.add("Modified: `" + download.toUpperCase(Locale.ROOT) + "`: `" + sha1(download, report, 0) + "` -> `" + sha1(download, report, 1) + "`");
+            }
+            sections.put("Downloads", downloads);
+            if (!libraries.isEmpty()) {
+                sections.put("Libraries", libraries);
+            }
+
+            reports.add(ComparisonReport.builder()
+                .versionId(versionId(report))
+                .modifiedVersion()
+                .time(EPOCH.plusSeconds(report * 3600L))
+                .sections(sections)
+                .build());
+        }
+        return reports;
+    }
+
+}
@@ -0,0 +1,73 @@
+package ca.stellardrift.mcannouncer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparing the central directories of two generated jars.
+ *
+ * <p>With the default entry size, the larger jars are around 40 MB, like a
+ * modern client jar.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JarBenchmark {
+    @Param({"5000", "20000"})
+    public int entries;
+
+    private Path directory;
+    private Path original;
+    private Path modified;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() throws IOException {
+        this.directory = Files.createTempDirectory("mc-announcer-jars");
+        this.original = this.directory.resolve("original.jar");
+        this.modified = this.directory.resolve("modified.jar");
+        Fixtures.jar(this.original, this.entries, 2048, 0);
+        Fixtures.jar(this.modified, this.entries, 2048, 1);
+        this.executor = Executors.newFixedThreadPool(2);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.executor.shutdown();
+        Files.delete(this.original);
+        Files.delete(this.modified);
+        Files.delete(this.directory);
+    }
+
+    @Benchmark
+    public Map<String, JarDiff.Entry> read() throws IOException {
+        return JarDiff.read(this.modified);
+    }
+
+    @Benchmark
+    public JarDiff compare() {
+        return JarDiff.compare(this.original, this.modified, this.executor).join();
+    }
+
+}
@@ -0,0 +1,159 @@
+package ca.stellardrift.mcannouncer;
+
+import ca.stellardrift.mcannouncer.util.Hashes;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spongepowered.gradle.vanilla.internal.model.VersionManifestV2;
+import org.spongepowered.gradle.vanilla.internal.util.GsonUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Parsing and diffing whole manifests.
+ *
+ * <p>The newer manifest drops the oldest version, adds a new one, and
+ * re-releases the ten most recent versions, so comparing it exercises every
+ * kind of change. Descriptors are already cached, so {@link #compare()}
+ * measures only the comparison itself.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ManifestBenchmark {
+    private static final int CHANGED = 10;
+
+    @Param({"1000", "10000", "100000"})
+    public int versions;
+
+    private Path cacheDir;
+    private DescriptorStore store;
+    private HttpClient client;
+    private byte[] manifest;
+    private ManifestIndex ourIndex;
+    private ManifestIndex theirIndex;
+    private ManifestState ours;
+    private ManifestState theirs;
+
+    @Setup
+    public void setup() throws IOException {
+        final int described = this.versions - CHANGED;
+        this.manifest = Fixtures.manifest(0, this.versions, version -> 0, described);
+        final byte[] modified = Fixtures.manifest(1, this.versions + 1, version -> version >= described && version < this.versions ? 1 : 0, described);
+
+        this.cacheDir = Files.createTempDirectory("mc-announcer-bench");
+        this.store = DescriptorStore.open(this.cacheDir);
+        for (int version = described; version < this.versions; version++) {
+            this.writeDescriptor(version, 0);
+            this.writeDescriptor(version, 1);
+        }
+        this.writeDescriptor(this.versions, 0);
+
+        this.client = HttpClient.newHttpClient();
+        final DescriptorLoader loader = new DescriptorLoader(this.client, this.store, new DescriptorCache(64 * 1024 * 1024), new FetchScheduler(Integer.MAX_VALUE, Duration.ofMinutes(1)), Runnable::run, new InFlightRequests());
+        this.ourIndex = readIndex(this.manifest);
+        this.theirIndex = readIndex(modified);
+        final ComparisonMemo comparisons = new ComparisonMemo(0); // measure the full comparison every time
+        this.ours = new ManifestState(this.ourIndex, Hashes.sha1(this.manifest), null, loader, comparisons, null);
+        this.theirs = new ManifestState(this.theirIndex, Hashes.sha1(modified), null, loader, comparisons, null);
+
+        // populate the descriptor cache
+        if (this.compare().size() != CHANGED + 2) {
+            throw new IllegalStateException("Fixture manifests did not produce the expected changes");
+        }
+    }
+
+    private void writeDescriptor(final int version, final int revision) throws IOException {
+        this.store.put(Fixtures.descriptor(version, revision).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.client.close();
+        this.store.close();
+        try (final Stream<Path> files = Files.walk(this.cacheDir)) {
+            for (final Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object parseIndex() throws IOException {
+        return readIndex(this.manifest);
+    }
+
+    // the same streaming path ManifestFetcher reads response bodies through
+    private static ManifestIndex readIndex(final byte[] manifest) throws IOException {
+        try (final JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(manifest), StandardCharsets.UTF_8))) {
+            return ManifestIndex.read(reader);
+        }
+    }
+
+    @Benchmark
+    public Object parseGson() {
+        return GsonUtils.GSON.fromJson(
+            new JsonReader(new InputStreamReader(new ByteArrayInputStream(this.manifest), StandardCharsets.UTF_8)),
+            VersionManifestV2.class
+        );
+    }
+
+    @Benchmark
+    public void diff(final Blackhole blackhole) {
+        ManifestIndex.diff(this.ourIndex, this.theirIndex, new ManifestIndex.DiffVisitor() {
+            @Override
+            public void removed(final int ours) {
+                blackhole.consume(ours);
+            }
+
+            @Override
+            public void added(final int theirs) {
+                blackhole.consume(theirs);
+            }
+
+            @Override
+            public void changed(final int ours, final int theirs) {
+                blackhole.consume(ours);
+                blackhole.consume(theirs);
+            }
+        });
+    }
+
+    @Benchmark
+    public List<ComparisonReport> compare() {
+        final List<CompletableFuture<ComparisonReport>> pending = this.ours.compare(this.theirs, 0);
+        final List<ComparisonReport> reports = new ArrayList<>(pending.size());
+        for (final CompletableFuture<ComparisonReport> report : pending) {
+            reports.add(report.join());
+        }
+        return reports;
+    }
+
+}
@@ -0,0 +1,69 @@
+package ca.stellardrift.mcannouncer;
+
+import club.minnced.discord.webhook.send.AllowedMentions;
+import club.minnced.discord.webhook.send.WebhookEmbed;
+import club.minnced.discord.webhook.send.WebhookMessageBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering reports into embeds, packing them into messages, and serializing the result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RenderBenchmark {
+    @Param({"1", "10", "100"})
+    public int reports;
+
+    private List<ComparisonReport> fixtures;
+    private EmbedPacker packer;
+    private List<List<WebhookEmbed>> packed;
+
+    @Setup
+    public void setup() {
+        this.fixtures = Fixtures.reports(this.reports);
+        this.packer = new EmbedPacker(new Config().changelogUrlFormat());
+        this.packed = this.packer.pack(this.fixtures, 0);
+    }
+
+    @Benchmark
+    public void render(final Blackhole blackhole) {
+        for (final ComparisonReport report : this.fixtures) {
+            blackhole.consume(this.packer.render(report, 0));
+        }
+    }
+
+    @Benchmark
+    public Object pack() {
+        return this.packer.pack(this.fixtures, 0);
+    }
+
+    @Benchmark
+    public void serialize(final Blackhole blackhole) {
+        for (final List<WebhookEmbed> embeds : this.packed) {
+            final RenderedMessage message = RenderedMessage.of(new WebhookMessageBuilder()
+                .setAllowedMentions(AllowedMentions.none())
+                .addEmbeds(embeds)
+                .build());
+            blackhole.consume(message.payload());
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+package ca.stellardrift.mcannouncer;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The differences between the objects listed in two asset indexes.
+ *
+ * <p>Only one index is held in memory at a time: the original is read into a
+ * map of object paths to hashes, and the modified index is streamed past it,
+ * removing each path it finds. Whatever is left over was removed.</p>
+ *
+ * @param added the number of objects only in the modified index
+ * @param removed the number of objects only in the original index
+ * @param changed the number of objects whose hash differs
+ * @param groups changes by top-level path, most changed first
+ */
+record AssetIndexDiff(int added, int removed, int changed, List<Group> groups) {
+    private static final int MAX_GROUPS = 10;
+
+    /**
+     * Changes to objects under one top-level path.
+     *
+     * @param path the first one or two directories of each object's path
+     * @param added the number of objects added
+     * @param removed the number of objects removed
+     * @param changed the number of objects changed
+     */
+    record Group(String path, int added, int removed, int changed) {
+        int total() {
+            return this.added + this.removed + this.changed;
+        }
+    }
+
+    /**
+     * Compare two asset indexes.
+     *
+     * @param original the raw JSON of the original index
+     * @param modified the raw JSON of the modified index
+     * @return the differences
+     * @throws IOException if either index could not be read
+     */
+    static AssetIndexDiff compare(final byte[] original, final byte[] modified) throws IOException {
+        final Map<String, String> remaining = new HashMap<>(4096);
+        try (final JsonReader reader = reader(original)) {
+            readObjects(reader, remaining::put);
+        }
+
+        final Map<String, int[]> groups = new HashMap<>();
+        final int[] totals = new int[3]; // added, removed, changed
+        try (final JsonReader reader = reader(modified)) {
+            readObjects(reader, (path, hash) -> {
+                final @Nullable String previous = remaining.remove(path);
+                if (previous == null) {
+                    count(groups, totals, path, 0);
+                } else if (!previous.equals(hash)) {
+                    count(groups, totals, path, 2);
+                }
+            });
+        }
+        for (final String path : remaining.keySet()) {
+            count(groups, totals, path, 1);
+        }
+
+        final List<Group> sorted = new ArrayList<>(groups.size());
+        for (final Map.Entry<String, int[]> entry : groups.entrySet()) {
+            final int[] counts = entry.getValue();
+            sorted.add(new Group(entry.getKey(), counts[0], counts[1], counts[2]));
+        }
+        sorted.sort(Comparator.comparingInt(Group::total).reversed().thenComparing(Group::path));
+        return new AssetIndexDiff(totals[0], totals[1], totals[2], List.copyOf(sorted));
+    }
+
+    private static void count(final Map<String, int[]> groups, final int[] totals, final String path, final int kind) {
+        totals[kind]++;
+        groups.computeIfAbsent(topLevel(path), $ -> new int[3])[kind]++;
+    }
+
+    /**
+     * Get the path objects are grouped under.
+     *
+     * <p>Assets are namespaced, so the first two directories are used where
+     * present, such as {@code minecraft/sounds}.</p>
+     *
+     * @param path the object path
+     * @return the group path
+     */
+    static String topLevel(final String path) {
+        final int first = path.indexOf('/');
+        if (first == -1) {
+            return path;
+        }
+        final int second = path.indexOf('/', first + 1);
+        return second == -1 ? path.substring(0, first) : path.substring(0, second);
+    }
+
+    /**
+     * Format this diff for a report section.
+     *
+     * @return the lines of the section, empty if nothing changed
+     */
+    List<String> lines() {
+        if (this.added + this.removed + this.changed == 0) {
+            return List.of();
+        }
+        final List<String> lines = new ArrayList<>(Math.min(this.groups.size(), MAX_GROUPS) + 2);
+        lines.add("__Objects__: " + describe(this.added, this.removed, this.changed));
+        for (int i = 0; i < Math.min(this.groups.size(), MAX_GROUPS); i++) {
+            final Group group = this.groups.get(i);
+            lines.add("- `" + group.path() + "`: " + describe(group.added(), group.removed(), group.changed()));
+        }
+        if (this.groups.size() > MAX_GROUPS) {
+            lines.add("- and " + (this.groups.size() - MAX_GROUPS) + " other paths");
+        }
+        return lines;
+    }
+
+    /**
+     * Describe counts of changes, leaving out any that are zero.
+     *
+     * @param added the number of additions
+     * @param removed the number of removals
+     * @param changed the number of changes
+     * @return a description such as {@code 3 added, 1 changed}
+     */
+    static String describe(final int added, final int removed, final int changed) {
+        final StringBuilder result = new StringBuilder();
+        append(result, added, "added");
+        append(result, removed, "removed");
+        append(result, changed, "changed");
+        return result.toString();
+    }
+
+    private static void append(final StringBuilder result, final int count, final String label) {
+        if (count > 0) {
+            result.append(result.isEmpty() ? "" : ", ").append(count).append(' ').append(label);
+        }
+    }
+
+    private static JsonReader reader(final byte[] index) {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(index), StandardCharsets.UTF_8));
+    }
+
+    @FunctionalInterface
+    private interface ObjectVisitor {
+        void visit(String path, String hash);
+    }
+
+    private static void readObjects(final JsonReader reader, final ObjectVisitor visitor) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("objects")) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String path = reader.nextName();
+                @Nullable String hash = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("hash")) {
+                        hash = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (hash == null) {
+                    throw new JsonSyntaxException("Asset object has no hash at " + reader.getPath());
+                }
+                visitor.visit(path, hash);
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+    }
+
+}
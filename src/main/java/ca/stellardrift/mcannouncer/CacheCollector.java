@@ -0,0 +1,231 @@
+package ca.stellardrift.mcannouncer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Periodically removes descriptors that are no longer needed from the {@link DescriptorStore}.
+ *
+ * <p>Descriptors listed in the current manifest, and the asset indexes they
+ * refer to, are always kept, as are the most recently added of the rest.
+ * Anything else is removed once it has gone unread for too long, then least
+ * recently read first until the store fits within its size budget.</p>
+ *
+ * <p>Collection is skipped while a poll cycle is running, and retried shortly after.</p>
+ */
+final class CacheCollector {
+    private static final Duration RETRY_DELAY = Duration.ofMinutes(1);
+    private static final String LEGACY_HTTP_CACHE = "okhttp-cache"; // webhook responses, from before the JDK client was used
+    private static final String NO_ASSET_INDEX = "";
+
+    private final DescriptorStore store;
+    private final Path cacheDir;
+    private final Config.Cache config;
+    private final ScheduledExecutorService executor;
+    private final Supplier<@Nullable Set<String>> referenced;
+    private final BooleanSupplier busy;
+    private final Map<String, String> assetIndexes = new ConcurrentHashMap<>(); // descriptor sha1 -> asset index sha1
+
+    private final LongAdder collections = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder reclaimedBytes = new LongAdder();
+    private volatile boolean running;
+
+    /**
+     * Create a new collector.
+     *
+     * @param store the store to collect from
+     * @param cacheDir the cache directory
+     * @param config budgets for the store
+     * @param executor a low-priority executor to collect on
+     * @param referenced the hashes of descriptors that must be kept, or {@code null} if not yet known
+     * @param busy whether other work is in progress that collection should not compete with
+     */
+    CacheCollector(
+        final DescriptorStore store,
+        final Path cacheDir,
+        final Config.Cache config,
+        final ScheduledExecutorService executor,
+        final Supplier<@Nullable Set<String>> referenced,
+        final BooleanSupplier busy
+    ) {
+        this.store = store;
+        this.cacheDir = cacheDir;
+        this.config = config;
+        this.executor = executor;
+        this.referenced = referenced;
+        this.busy = busy;
+    }
+
+    void start() {
+        this.running = true;
+        this.schedule(Duration.ZERO);
+    }
+
+    void stop() {
+        this.running = false;
+    }
+
+    private void schedule(final Duration delay) {
+        if (!this.running) {
+            return;
+        }
+        try {
+            this.executor.schedule(this::run, delay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException ex) {
+            // shutting down
+            this.running = false;
+        }
+    }
+
+    private void run() {
+        if (this.busy.getAsBoolean()) {
+            Logger.debug("Poll in progress, postponing cache collection");
+            this.schedule(RETRY_DELAY);
+            return;
+        }
+
+        try {
+            this.collect();
+        } catch (final IOException | RuntimeException ex) {
+            Logger.error(ex, "Failed to collect descriptor cache");
+        }
+        this.schedule(this.config.collectionInterval());
+    }
+
+    /**
+     * Remove unneeded descriptors from the store.
+     *
+     * @throws IOException if the store could not be compacted
+     */
+    void collect() throws IOException {
+        this.reclaimedBytes.add(this.removeLegacyHttpCache());
+
+        final @Nullable Set<String> referenced = this.referenced.get();
+        if (referenced == null) {
+            // without a manifest, there is no way to tell what is still needed
+            return;
+        }
+        final Set<String> live = this.withAssetIndexes(referenced);
+
+        final List<DescriptorStore.Entry> candidates = new ArrayList<>();
+        for (final DescriptorStore.Entry entry : this.store.entries()) {
+            if (!live.contains(entry.sha1())) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort(Comparator.comparing(DescriptorStore.Entry::created).reversed());
+        final List<DescriptorStore.Entry> unprotected = candidates.subList(Math.min(this.config.keepRecent(), candidates.size()), candidates.size());
+
+        final Instant cutoff = Instant.now().minus(this.config.maximumAge());
+        final Set<String> evict = new HashSet<>();
+        long remaining = this.store.packSize();
+        unprotected.sort(Comparator.comparing(DescriptorStore.Entry::lastAccess));
+        for (final DescriptorStore.Entry entry : unprotected) {
+            if (entry.lastAccess().isBefore(cutoff) || remaining > this.config.maximumSize()) {
+                evict.add(entry.sha1());
+                remaining -= entry.storedSize();
+            }
+        }
+
+        this.collections.increment();
+        if (evict.isEmpty()) {
+            Logger.debug("Descriptor cache is within budget, nothing to collect");
+            return;
+        }
+
+        final long reclaimed = this.store.remove(evict);
+        this.evicted.add(evict.size());
+        this.reclaimedBytes.add(reclaimed);
+        Logger.info("Removed {} unused descriptors from cache, reclaiming {} bytes", evict.size(), reclaimed);
+    }
+
+    /**
+     * Add the asset indexes of referenced descriptors, which are stored alongside them.
+     */
+    private Set<String> withAssetIndexes(final Set<String> referenced) {
+        this.assetIndexes.keySet().retainAll(referenced);
+        final Set<String> live = new HashSet<>(referenced);
+        for (final String sha1 : referenced) {
+            // descriptors never change, so each only has to be read once
+            final @Nullable String assetIndex = this.assetIndexes.computeIfAbsent(sha1, this::readAssetIndex);
+            if (assetIndex != null && !assetIndex.equals(NO_ASSET_INDEX)) {
+                live.add(assetIndex);
+            }
+        }
+        return live;
+    }
+
+    private @Nullable String readAssetIndex(final String descriptorSha1) {
+        try {
+            final byte @Nullable [] contents = this.store.get(descriptorSha1);
+            if (contents == null) {
+                return null; // not stored yet
+            }
+            final CompactDescriptor.@Nullable Download assetIndex = CompactDescriptor.parse(contents).assetIndex();
+            return assetIndex == null ? NO_ASSET_INDEX : assetIndex.sha1Hex();
+        } catch (final IOException | RuntimeException ex) {
+            Logger.debug(ex, "Unable to read descriptor {} to find its asset index", descriptorSha1);
+            return null;
+        }
+    }
+
+    private long removeLegacyHttpCache() throws IOException {
+        final Path legacy = this.cacheDir.resolve(LEGACY_HTTP_CACHE);
+        if (!Files.isDirectory(legacy)) {
+            return 0;
+        }
+
+        long size = 0;
+        final List<Path> files;
+        try (final Stream<Path> walk = Files.walk(legacy)) {
+            files = walk.sorted(Comparator.reverseOrder()).toList();
+        }
+        for (final Path file : files) {
+            if (Files.isRegularFile(file)) {
+                size += Files.size(file);
+            }
+            Files.delete(file);
+        }
+        Logger.info("Removed unused HTTP cache at {}", legacy);
+        return size;
+    }
+
+    long collections() {
+        return this.collections.sum();
+    }
+
+    long evicted() {
+        return this.evicted.sum();
+    }
+
+    /**
+     * Get the total space freed by collection.
+     *
+     * @return reclaimed space, in bytes
+     */
+    long reclaimedBytes() {
+        return this.reclaimedBytes.sum();
+    }
+
+}
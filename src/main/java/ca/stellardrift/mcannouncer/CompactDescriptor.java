@@ -0,0 +1,499 @@
+package ca.stellardrift.mcannouncer;
+
+import ca.stellardrift.mcannouncer.util.Hashes;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * The parts of a version descriptor that are compared between versions.
+ *
+ * <p>Descriptors are read with a streaming parser. Everything else, such as
+ * launch arguments and logging configuration, is only kept as a hash, so
+ * changes to it can be found without holding onto it. Library
+ * coordinates are interned, since most are shared between versions, and
+ * hashes are kept as raw bytes.</p>
+ *
+ * <p>Old-style natives libraries, which list one classifier per operating
+ * system, are expanded into one library per native artifact, so every
+ * library has exactly one set of coordinates to compare.</p>
+ *
+ * @param id the version id
+ * @param assets the asset index id
+ * @param assetIndex where to find the asset index
+ * @param downloads downloads, by classifier as named in the descriptor
+ * @param libraries libraries, sorted by key
+ * @param javaVersion the required Java runtime
+ * @param structure the {@linkplain StructuralDiff Merkle hashes} of every other top-level property, by name
+ * @param weight the approximate retained size, in bytes
+ */
+record CompactDescriptor(
+    String id,
+    @Nullable String assets,
+    @Nullable Download assetIndex,
+    Map<String, Download> downloads,
+    Libraries libraries,
+    @Nullable JavaVersion javaVersion,
+    Map<String, Long> structure,
+    long weight
+) {
+    // rough per-object costs, for estimating retained size
+    private static final int DESCRIPTOR_OVERHEAD = 128;
+    private static final int DOWNLOAD_OVERHEAD = 96;
+    private static final int LIBRARY_OVERHEAD = 80;
+    private static final int STRUCTURE_OVERHEAD = 64;
+
+    /**
+     * A file that can be downloaded for a version.
+     *
+     * @param sha1 the raw SHA-1 hash of the file
+     * @param size the size of the file
+     * @param url where to download the file
+     */
+    record Download(byte[] sha1, long size, String url) {
+        String sha1Hex() {
+            return Hashes.toHex(this.sha1);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Download that
+                && this.size == that.size
+                && Arrays.equals(this.sha1, that.sha1)
+                && this.url.equals(that.url);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.sha1);
+        }
+    }
+
+    /**
+     * A library on the game's classpath.
+     *
+     * @param group the maven group
+     * @param artifact the maven artifact id
+     * @param version the library version
+     * @param classifier the maven classifier, if any
+     * @param rules the library's rules, in a canonical form, or an empty string if it applies everywhere
+     * @param os the operating system this library is for, if it is limited to one
+     * @param sha1 the raw SHA-1 hash of the artifact, if it has one
+     * @param size the size of the artifact, or {@code -1} if unknown
+     */
+    record Library(
+        String group,
+        String artifact,
+        String version,
+        @Nullable String classifier,
+        String rules,
+        @Nullable String os,
+        byte @Nullable [] sha1,
+        long size
+    ) {
+        /**
+         * Get the identity of this library, without its version.
+         *
+         * <p>Libraries with the same key in two descriptors are the same
+         * library, possibly at a different version.</p>
+         *
+         * @return the coordinates, classifier and rules
+         */
+        String key() {
+            return this.rules.isEmpty() ? this.name() : this.name() + '@' + this.rules;
+        }
+
+        /**
+         * Get the coordinates of this library without its version, for display.
+         *
+         * @return the group, artifact, and classifier if any, separated by colons
+         */
+        String name() {
+            return this.classifier == null ? this.group + ':' + this.artifact : this.group + ':' + this.artifact + ':' + this.classifier;
+        }
+
+        /**
+         * Get whether this library holds native code for a specific platform.
+         *
+         * @return whether the classifier names a natives artifact
+         */
+        boolean natives() {
+            return this.classifier != null && this.classifier.startsWith("natives-");
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Library that
+                && this.size == that.size
+                && this.group.equals(that.group)
+                && this.artifact.equals(that.artifact)
+                && this.version.equals(that.version)
+                && Objects.equals(this.classifier, that.classifier)
+                && this.rules.equals(that.rules)
+                && Arrays.equals(this.sha1, that.sha1);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.key().hashCode() + this.version.hashCode();
+        }
+    }
+
+    /**
+     * The libraries of a descriptor, sorted by key.
+     *
+     * <p>Keys are computed once when the descriptor is read, so comparing
+     * one descriptor against many others is a merge of two sorted arrays.</p>
+     */
+    static final class Libraries {
+        static final Libraries EMPTY = new Libraries(new String[0], new Library[0]);
+
+        private final String[] keys;
+        private final Library[] entries;
+
+        private Libraries(final String[] keys, final Library[] entries) {
+            this.keys = keys;
+            this.entries = entries;
+        }
+
+        /**
+         * Index a list of libraries.
+         *
+         * <p>Where more than one library has the same key, the last is kept,
+         * as the launcher would.</p>
+         *
+         * @param libraries the libraries, in any order
+         * @return the sorted libraries
+         */
+        static Libraries of(final List<Library> libraries) {
+            final Map<String, Library> byKey = new TreeMap<>();
+            for (final Library library : libraries) {
+                byKey.put(library.key().intern(), library);
+            }
+            return new Libraries(byKey.keySet().toArray(new String[0]), byKey.values().toArray(new Library[0]));
+        }
+
+        int size() {
+            return this.entries.length;
+        }
+
+        String key(final int index) {
+            return this.keys[index];
+        }
+
+        Library get(final int index) {
+            return this.entries[index];
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Libraries that && Arrays.equals(this.entries, that.entries);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.entries);
+        }
+    }
+
+    /**
+     * The Java runtime required by a version.
+     *
+     * @param component the name of the runtime component provided by the launcher
+     * @param majorVersion the Java feature release
+     */
+    record JavaVersion(String component, int majorVersion) {
+    }
+
+    /**
+     * Read the compared parts of a version descriptor.
+     *
+     * @param descriptor the raw descriptor JSON
+     * @return a compact descriptor
+     * @throws IOException if the descriptor could not be read
+     */
+    static CompactDescriptor parse(final byte[] descriptor) throws IOException {
+        try (final JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(descriptor), StandardCharsets.UTF_8))) {
+            return read(reader);
+        }
+    }
+
+    static CompactDescriptor read(final JsonReader reader) throws IOException {
+        @Nullable String id = null;
+        @Nullable String assets = null;
+        @Nullable Download assetIndex = null;
+        Map<String, Download> downloads = Map.of();
+        Libraries libraries = Libraries.EMPTY;
+        @Nullable JavaVersion javaVersion = null;
+        final Map<String, Long> structure = new TreeMap<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            switch (name) {
+                case "id" -> id = reader.nextString();
+                case "assets" -> assets = nextStringOrNull(reader);
+                case "assetIndex" -> assetIndex = readDownload(reader);
+                case "downloads" -> downloads = readDownloads(reader);
+                case "libraries" -> libraries = readLibraries(reader);
+                case "javaVersion" -> javaVersion = readJavaVersion(reader);
+                default -> structure.put(name.intern(), StructuralDiff.hash(reader));
+            }
+        }
+        reader.endObject();
+
+        if (id == null) {
+            throw new JsonSyntaxException("Version descriptor has no id");
+        }
+
+        long weight = DESCRIPTOR_OVERHEAD + (long) LIBRARY_OVERHEAD * libraries.size();
+        for (final Download download : downloads.values()) {
+            weight += DOWNLOAD_OVERHEAD + download.url().length();
+        }
+        if (assetIndex != null) {
+            weight += DOWNLOAD_OVERHEAD + assetIndex.url().length();
+        }
+        weight += (long) STRUCTURE_OVERHEAD * structure.size();
+        return new CompactDescriptor(id.intern(), assets == null ? null : assets.intern(), assetIndex, downloads, libraries, javaVersion, Collections.unmodifiableMap(structure), weight);
+    }
+
+    private static @Nullable String nextStringOrNull(final JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static Map<String, Download> readDownloads(final JsonReader reader) throws IOException {
+        final Map<String, Download> downloads = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String classifier = reader.nextName().intern();
+            final @Nullable Download download = readDownload(reader);
+            if (download != null) {
+                downloads.put(classifier, download);
+            }
+        }
+        reader.endObject();
+        return Collections.unmodifiableMap(downloads);
+    }
+
+    private static @Nullable Download readDownload(final JsonReader reader) throws IOException {
+        @Nullable String sha1 = null;
+        long size = -1;
+        @Nullable String url = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "sha1" -> sha1 = reader.nextString();
+                case "size" -> size = reader.nextLong();
+                case "url" -> url = reader.nextString();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return sha1 == null || url == null ? null : new Download(Hashes.fromHex(sha1), size, url);
+    }
+
+    private static Libraries readLibraries(final JsonReader reader) throws IOException {
+        final List<Library> libraries = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            readLibrary(reader, libraries);
+        }
+        reader.endArray();
+        return Libraries.of(libraries);
+    }
+
+    private static void readLibrary(final JsonReader reader, final List<Library> libraries) throws IOException {
+        @Nullable String name = null;
+        @Nullable Download artifact = null;
+        Map<String, Download> classifiers = Map.of();
+        Map<String, String> natives = Map.of(); // os -> classifier
+        String rules = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name" -> name = reader.nextString();
+                case "natives" -> natives = readNatives(reader);
+                case "rules" -> rules = readRules(reader);
+                case "downloads" -> {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "artifact" -> artifact = readDownload(reader);
+                            case "classifiers" -> classifiers = readDownloads(reader);
+                            default -> reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (name == null) {
+            return;
+        }
+        final String[] coordinates = name.split(":", 4);
+        if (coordinates.length < 3) {
+            throw new JsonSyntaxException("Invalid library coordinates '" + name + "' at " + reader.getPath());
+        }
+        final String group = coordinates[0].intern();
+        final String id = coordinates[1].intern();
+        final String version = coordinates[2].intern();
+        final @Nullable String classifier = coordinates.length > 3 ? coordinates[3].intern() : null;
+        final String ruleSet = rules.intern();
+
+        // old-style natives libraries often have no main artifact at all
+        if (artifact != null || natives.isEmpty()) {
+            libraries.add(library(group, id, version, classifier, ruleSet, allowedOs(rules), artifact));
+        }
+        for (final Map.Entry<String, String> entry : natives.entrySet()) {
+            final String pattern = entry.getValue();
+            final List<String> candidates = pattern.contains("${arch}")
+                ? List.of(pattern.replace("${arch}", "64"), pattern.replace("${arch}", "32"))
+                : List.of(pattern);
+            boolean found = false;
+            for (final String candidate : candidates) {
+                final @Nullable Download download = classifiers.get(candidate);
+                if (download != null) {
+                    libraries.add(library(group, id, version, candidate.intern(), ruleSet, entry.getKey(), download));
+                    found = true;
+                }
+            }
+            if (!found) {
+                libraries.add(library(group, id, version, candidates.get(0).intern(), ruleSet, entry.getKey(), null));
+            }
+        }
+    }
+
+    private static Library library(
+        final String group,
+        final String artifact,
+        final String version,
+        final @Nullable String classifier,
+        final String rules,
+        final @Nullable String os,
+        final @Nullable Download download
+    ) {
+        return new Library(group, artifact, version, classifier, rules, os, download == null ? null : download.sha1(), download == null ? -1 : download.size());
+    }
+
+    private static Map<String, String> readNatives(final JsonReader reader) throws IOException {
+        final Map<String, String> natives = new TreeMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            natives.put(reader.nextName().intern(), reader.nextString());
+        }
+        reader.endObject();
+        return natives;
+    }
+
+    /**
+     * Read a library's rules into a canonical string.
+     *
+     * <p>Each rule becomes its action, followed by any operating system name
+     * and architecture it is limited to, with rules separated by commas. A
+     * rule that depends on launcher features is marked with a {@code +}.</p>
+     */
+    private static String readRules(final JsonReader reader) throws IOException {
+        final StringBuilder rules = new StringBuilder();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String action = "allow";
+            @Nullable String os = null;
+            @Nullable String arch = null;
+            boolean features = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "action" -> action = reader.nextString();
+                    case "os" -> {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "name" -> os = reader.nextString();
+                                case "arch" -> arch = reader.nextString();
+                                default -> reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    case "features" -> {
+                        features = true;
+                        reader.skipValue();
+                    }
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (!rules.isEmpty()) {
+                rules.append(',');
+            }
+            rules.append(action);
+            if (os != null) {
+                rules.append(':').append(os);
+            }
+            if (arch != null) {
+                rules.append('/').append(arch);
+            }
+            if (features) {
+                rules.append('+');
+            }
+        }
+        reader.endArray();
+        return rules.toString();
+    }
+
+    /**
+     * Get the operating system a canonical rule set limits a library to.
+     *
+     * @return the only operating system allowed, or {@code null} if not limited to one
+     */
+    private static @Nullable String allowedOs(final String rules) {
+        if (!rules.startsWith("allow:") || rules.indexOf(',') != -1) {
+            return null;
+        }
+        final int end = rules.indexOf('/');
+        return rules.substring("allow:".length(), end == -1 ? rules.length() : end).intern();
+    }
+
+    private static @Nullable JavaVersion readJavaVersion(final JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        @Nullable String component = null;
+        int majorVersion = -1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "component" -> component = reader.nextString();
+                case "majorVersion" -> majorVersion = reader.nextInt();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return component == null ? null : new JavaVersion(component.intern(), majorVersion);
+    }
+
+}
@@ -0,0 +1,284 @@
+package ca.stellardrift.mcannouncer;
+
+import ca.stellardrift.mcannouncer.util.AtomicFiles;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.spongepowered.gradle.vanilla.internal.util.Pair;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the outcome of comparing two version descriptors.
+ *
+ * <p>A comparison depends only on the two descriptors, whether changed
+ * hashes are listed, and which jars have their contents compared, so results
+ * are keyed by descriptor hashes and those settings, and can be reused
+ * across poll cycles and on-demand comparisons. The least recently used
+ * results are discarded once the memo is full.</p>
+ *
+ * <p>The memo can be saved to disk, so results survive a restart.</p>
+ */
+final class ComparisonMemo {
+    // bump whenever the content of comparison sections changes, to discard stale results
+    private static final int FORMAT_VERSION = 6;
+
+    private final int maximumSize;
+    private final Map<Key, Result> results = new LinkedHashMap<>(64, 0.75f, true); // guarded by this
+    private boolean dirty; // guarded by this
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Identifies a comparison.
+     *
+     * @param oldSha1 the hash of the original descriptor
+     * @param newSha1 the hash of the modified descriptor
+     * @param listChangedHashes whether downloads with changed hashes are listed
+     * @param comparedJars the downloads whose contents are compared, empty if jars are not compared
+     */
+    record Key(String oldSha1, String newSha1, boolean listChangedHashes, Set<String> comparedJars) {
+        Key {
+            comparedJars = Set.copyOf(comparedJars);
+        }
+    }
+
+    /**
+     * The outcome of a comparison.
+     *
+     * @param sections non-empty report sections, in order
+     * @param links links to the modified version's downloads
+     */
+    record Result(Map<String, List<String>> sections, List<Pair<String, URL>> links) {
+        Result {
+            sections = Collections.unmodifiableMap(new LinkedHashMap<>(sections));
+            links = List.copyOf(links);
+        }
+    }
+
+    ComparisonMemo(final int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    synchronized @Nullable Result get(final Key key) {
+        final @Nullable Result result = this.results.get(key);
+        if (result == null) {
+            this.misses.increment();
+        } else {
+            this.hits.increment();
+        }
+        return result;
+    }
+
+    synchronized void put(final Key key, final Result result) {
+        if (this.maximumSize <= 0) {
+            return;
+        }
+        this.results.put(key, result);
+        this.dirty = true;
+        for (final Iterator<Result> it = this.results.values().iterator(); this.results.size() > this.maximumSize;) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    synchronized int size() {
+        return this.results.size();
+    }
+
+    long hits() {
+        return this.hits.sum();
+    }
+
+    long misses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Load results saved by {@link #save(Path)}.
+     *
+     * <p>Results saved in an older format, or a file that cannot be read, are discarded.</p>
+     *
+     * @param file the file to read
+     */
+    void load(final Path file) {
+        try (final Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             final JsonReader json = new JsonReader(reader)) {
+            json.beginObject();
+            int version = -1;
+            final List<Map.Entry<Key, Result>> loaded = new ArrayList<>();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "version" -> version = json.nextInt();
+                    case "results" -> {
+                        json.beginArray();
+                        while (json.hasNext()) {
+                            loaded.add(readResult(json));
+                        }
+                        json.endArray();
+                    }
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+
+            if (version != FORMAT_VERSION) {
+                Logger.info("Discarding saved comparisons from an older version");
+                return;
+            }
+            synchronized (this) {
+                for (final Map.Entry<Key, Result> entry : loaded) {
+                    this.put(entry.getKey(), entry.getValue());
+                }
+                this.dirty = false;
+            }
+            Logger.debug("Loaded {} saved comparisons", loaded.size());
+        } catch (final NoSuchFileException ex) {
+            // nothing saved yet
+        } catch (final IOException | JsonParseException | IllegalStateException ex) {
+            Logger.warn(ex, "Failed to read saved comparisons from {}, starting afresh", file);
+        }
+    }
+
+    private static Map.Entry<Key, Result> readResult(final JsonReader json) throws IOException {
+        @Nullable String oldSha1 = null;
+        @Nullable String newSha1 = null;
+        boolean listChangedHashes = false;
+        final Set<String> comparedJars = new HashSet<>();
+        final Map<String, List<String>> sections = new LinkedHashMap<>();
+        final List<Pair<String, URL>> links = new ArrayList<>();
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "old" -> oldSha1 = json.nextString();
+                case "new" -> newSha1 = json.nextString();
+                case "listChangedHashes" -> listChangedHashes = json.nextBoolean();
+                case "comparedJars" -> {
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        comparedJars.add(json.nextString());
+                    }
+                    json.endArray();
+                }
+                case "sections" -> {
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        final String title = json.nextName();
+                        final List<String> lines = new ArrayList<>();
+                        json.beginArray();
+                        while (json.hasNext()) {
+                            lines.add(json.nextString());
+                        }
+                        json.endArray();
+                        sections.put(title, lines);
+                    }
+                    json.endObject();
+                }
+                case "links" -> {
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        final String name = json.nextName();
+                        try {
+                            links.add(Pair.of(name, URI.create(json.nextString()).toURL()));
+                        } catch (final MalformedURLException | IllegalArgumentException ex) {
+                            throw new JsonParseException("Invalid link URL at " + json.getPath(), ex);
+                        }
+                    }
+                    json.endObject();
+                }
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        if (oldSha1 == null || newSha1 == null) {
+            throw new JsonParseException("Incomplete comparison before " + json.getPath());
+        }
+        return Map.entry(new Key(oldSha1, newSha1, listChangedHashes, comparedJars), new Result(sections, links));
+    }
+
+    /**
+     * Save results to disk, if any have been added since the last save.
+     *
+     * @param file the file to write
+     * @throws IOException if the file could not be written
+     */
+    void save(final Path file) throws IOException {
+        final StringWriter out = new StringWriter();
+        synchronized (this) {
+            if (!this.dirty) {
+                return;
+            }
+            try (final JsonWriter json = new JsonWriter(out)) {
+                json.beginObject();
+                json.name("version").value(FORMAT_VERSION);
+                json.name("results").beginArray();
+                // least recently used first, so order is kept when loading
+                for (final Map.Entry<Key, Result> entry : this.results.entrySet()) {
+                    writeResult(json, entry.getKey(), entry.getValue());
+                }
+                json.endArray();
+                json.endObject();
+            }
+            this.dirty = false;
+        }
+
+        try {
+            AtomicFiles.write(file, out.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException ex) {
+            synchronized (this) {
+                this.dirty = true;
+            }
+            throw ex;
+        }
+    }
+
+    private static void writeResult(final JsonWriter json, final Key key, final Result result) throws IOException {
+        json.beginObject();
+        json.name("old").value(key.oldSha1());
+        json.name("new").value(key.newSha1());
+        json.name("listChangedHashes").value(key.listChangedHashes());
+        json.name("comparedJars").beginArray();
+        for (final String download : new TreeSet<>(key.comparedJars())) {
+            json.value(download);
+        }
+        json.endArray();
+        json.name("sections").beginObject();
+        for (final Map.Entry<String, List<String>> section : result.sections().entrySet()) {
+            json.name(section.getKey()).beginArray();
+            for (final String line : section.getValue()) {
+                json.value(line);
+            }
+            json.endArray();
+        }
+        json.endObject();
+        json.name("links").beginObject();
+        for (final Pair<String, URL> link : result.links()) {
+            json.name(link.first()).value(link.second().toString());
+        }
+        json.endObject();
+        json.endObject();
+    }
+
+}
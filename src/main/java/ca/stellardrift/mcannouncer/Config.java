@@ -2,13 +2,16 @@ package ca.stellardrift.mcannouncer;
 
 import ca.stellardrift.mcannouncer.util.GsonUtils;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.annotations.SerializedName;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -17,6 +20,15 @@ public class Config {
 
     private String changelogUrlFormat = "https://mdcfe.dev/mc-changes?ver=%s";
     private String cacheDir;
+    private long descriptorCacheSize = 64L * 1024 * 1024; // bytes of descriptor JSON to keep parsed in memory
+    private int comparisonCacheSize = 1024; // descriptor comparisons to remember, also saved to disk
+    private ExecutionMode executionMode = ExecutionMode.VIRTUAL;
+    private Polling polling = new Polling();
+    private Delivery delivery = new Delivery();
+    private Metrics metrics = new Metrics();
+    private Cache cache = new Cache();
+    private Prewarm prewarm = new Prewarm();
+    private Jars jars = new Jars();
     private Map<String, Webhook> endpoints = Map.of();
 
     static Config load(final Path file) throws IOException {
@@ -30,6 +42,175 @@ public class Config {
         return config;
     }
 
+    enum ExecutionMode {
+        @SerializedName("platform")
+        PLATFORM, // a small shared pool of platform threads
+        @SerializedName("virtual")
+        VIRTUAL // virtual threads for blocking work, with a dedicated timer thread
+    }
+
+    static class Polling {
+        private long minimumInterval = 10; // seconds, used right after a change is detected
+        private long maximumInterval = 120; // seconds, approached while nothing changes
+        private double relaxFactor = 1.5; // growth of the interval after each quiet poll
+        private double jitter = 0.1; // random fraction of the interval to add or subtract
+        private long maximumBackoff = 900; // seconds, upper bound when requests are failing
+        private long fetchTimeout = 30; // seconds to fetch and parse the manifest
+        private long diffTimeout = 120; // seconds to compare manifests, including descriptor downloads
+        private long renderTimeout = 10; // seconds to produce webhook messages
+        private long deliverTimeout = 60; // seconds to deliver to all endpoints
+        private int descriptorConcurrency = 6; // descriptors downloaded or parsed at once
+        private long descriptorTimeout = 30; // seconds to load a single descriptor, once started
+
+        public Duration minimumInterval() {
+            return Duration.ofSeconds(this.minimumInterval);
+        }
+
+        public Duration maximumInterval() {
+            return Duration.ofSeconds(Math.max(this.minimumInterval, this.maximumInterval));
+        }
+
+        public double relaxFactor() {
+            return Math.max(1, this.relaxFactor);
+        }
+
+        public double jitter() {
+            return Math.min(Math.max(0, this.jitter), 1);
+        }
+
+        public Duration maximumBackoff() {
+            return Duration.ofSeconds(this.maximumBackoff);
+        }
+
+        public int descriptorConcurrency() {
+            return Math.max(1, this.descriptorConcurrency);
+        }
+
+        public Duration descriptorTimeout() {
+            return Duration.ofSeconds(this.descriptorTimeout);
+        }
+
+        public Duration stageTimeout(final PollPipeline.Stage stage) {
+            return Duration.ofSeconds(switch (stage) {
+                case FETCH -> this.fetchTimeout;
+                case DIFF -> this.diffTimeout;
+                case RENDER -> this.renderTimeout;
+                case DELIVER -> this.deliverTimeout;
+            });
+        }
+    }
+
+    static class Delivery {
+        private int queueCapacity = 256; // messages waiting per endpoint
+        private int maxAttempts = 5; // per message, including rate limited attempts
+        private long initialBackoff = 1; // seconds, doubled after each failed attempt
+        private long maximumBackoff = 60; // seconds
+        private long requestTimeout = 30; // seconds
+        private int breakerThreshold = 5; // consecutive failed messages before suspending an endpoint
+        private long breakerCooldown = 300; // seconds an endpoint stays suspended
+
+        public int queueCapacity() {
+            return Math.max(1, this.queueCapacity);
+        }
+
+        public int maxAttempts() {
+            return Math.max(1, this.maxAttempts);
+        }
+
+        public Duration initialBackoff() {
+            return Duration.ofSeconds(this.initialBackoff);
+        }
+
+        public Duration maximumBackoff() {
+            return Duration.ofSeconds(this.maximumBackoff);
+        }
+
+        public Duration requestTimeout() {
+            return Duration.ofSeconds(this.requestTimeout);
+        }
+
+        public int breakerThreshold() {
+            return Math.max(1, this.breakerThreshold);
+        }
+
+        public Duration breakerCooldown() {
+            return Duration.ofSeconds(this.breakerCooldown);
+        }
+    }
+
+    static class Metrics {
+        private boolean enabled = false; // serve metrics in Prometheus text format
+        private String host = "127.0.0.1"; // address to listen on
+        private int port = 9464;
+        private String path = "/metrics";
+
+        public boolean enabled() {
+            return this.enabled;
+        }
+
+        public InetSocketAddress address() {
+            return new InetSocketAddress(this.host, this.port);
+        }
+
+        public String path() {
+            return this.path.startsWith("/") ? this.path : '/' + this.path;
+        }
+    }
+
+    static class Cache {
+        private long collectionInterval = 21600; // seconds between cache garbage collections
+        private long maximumSize = 128L * 1024 * 1024; // bytes of compressed descriptors to keep on disk
+        private long maximumAge = 90; // days a descriptor may go unread before it is removed
+        private int keepRecent = 32; // descriptors to keep beyond those in the current manifest, newest first
+
+        public Duration collectionInterval() {
+            return Duration.ofSeconds(Math.max(60, this.collectionInterval));
+        }
+
+        public long maximumSize() {
+            return this.maximumSize;
+        }
+
+        public Duration maximumAge() {
+            return Duration.ofDays(this.maximumAge);
+        }
+
+        public int keepRecent() {
+            return Math.max(0, this.keepRecent);
+        }
+    }
+
+    static class Prewarm {
+        private int recentVersions = 16; // most recently updated versions to load at startup, besides the latest release and snapshot
+        private long budget = 60; // seconds to spend starting loads before giving up
+
+        public int recentVersions() {
+            return Math.max(0, this.recentVersions);
+        }
+
+        public Duration budget() {
+            return Duration.ofSeconds(this.budget);
+        }
+    }
+
+    static class Jars {
+        private boolean enabled = false; // download jars to compare their contents, which counts towards the diff timeout
+        private Set<String> downloads = Set.of("client", "server"); // downloads to compare, by name in the version descriptor
+        private int keep = 8; // jars to keep on disk, most recently used first
+
+        public boolean enabled() {
+            return this.enabled;
+        }
+
+        public Set<String> downloads() {
+            return this.downloads;
+        }
+
+        public int keep() {
+            return Math.max(2, this.keep);
+        }
+    }
+
     static class Webhook {
         private transient @MonotonicNonNull String key;
         private URI webhookUrl;
@@ -61,6 +242,42 @@ public class Config {
         return Path.of(this.cacheDir);
     }
 
+    public long descriptorCacheSize() {
+        return this.descriptorCacheSize;
+    }
+
+    public int comparisonCacheSize() {
+        return this.comparisonCacheSize;
+    }
+
+    public ExecutionMode executionMode() {
+        return this.executionMode;
+    }
+
+    public Polling polling() {
+        return this.polling;
+    }
+
+    public Delivery delivery() {
+        return this.delivery;
+    }
+
+    public Metrics metrics() {
+        return this.metrics;
+    }
+
+    public Cache cache() {
+        return this.cache;
+    }
+
+    public Prewarm prewarm() {
+        return this.prewarm;
+    }
+
+    public Jars jars() {
+        return this.jars;
+    }
+
     public Map<String, Webhook> endpoints() { // id, endpoint
         return this.endpoints;
     }
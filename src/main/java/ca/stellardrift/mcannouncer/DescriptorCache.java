@@ -0,0 +1,146 @@
+package ca.stellardrift.mcannouncer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.spongepowered.gradle.vanilla.repository.ResolutionResult;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A size-bounded cache of parsed version descriptors, shared between manifest states.
+ *
+ * <p>Entries are keyed by version id and descriptor hash, so a descriptor
+ * only has to be parsed once for as long as it remains referenced.
+ * Concurrent requests for the same descriptor share a single load.</p>
+ */
+final class DescriptorCache {
+    private final long maximumWeight;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true); // guarded by this
+    private final Map<Key, CompletableFuture<ResolutionResult<CompactDescriptor>>> loading = new ConcurrentHashMap<>();
+    private long weight; // guarded by this
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    record Key(String id, String sha1) {
+    }
+
+    /**
+     * A loaded descriptor.
+     *
+     * @param descriptor the descriptor
+     * @param weight the approximate size of the descriptor, in bytes
+     */
+    record Loaded(CompactDescriptor descriptor, long weight) {
+    }
+
+    private record Entry(ResolutionResult<CompactDescriptor> result, long weight) {
+    }
+
+    DescriptorCache(final long maximumWeight) {
+        this.maximumWeight = maximumWeight;
+    }
+
+    /**
+     * Get a descriptor, loading it if it is not already known.
+     *
+     * <p>Descriptors that could not be found are not cached.</p>
+     *
+     * @param key the descriptor to look up
+     * @param loader a function to load the descriptor, completing with {@code null} if not found
+     * @return a future providing the descriptor
+     */
+    CompletableFuture<ResolutionResult<CompactDescriptor>> get(final Key key, final Function<Key, CompletableFuture<@Nullable Loaded>> loader) {
+        final @Nullable ResolutionResult<CompactDescriptor> cached = this.lookup(key);
+        if (cached != null) {
+            this.hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        final var created = new CompletableFuture<ResolutionResult<CompactDescriptor>>();
+        final var existing = this.loading.putIfAbsent(key, created);
+        if (existing != null) { // someone else is already loading
+            this.hits.increment();
+            return existing;
+        }
+
+        // check again, in case a load completed between lookup and registration
+        final @Nullable ResolutionResult<CompactDescriptor> loaded = this.lookup(key);
+        if (loaded != null) {
+            this.hits.increment();
+            this.loading.remove(key, created);
+            created.complete(loaded);
+            return created;
+        }
+
+        this.misses.increment();
+        CompletableFuture<@Nullable Loaded> load;
+        try {
+            load = loader.apply(key);
+        } catch (final RuntimeException ex) {
+            load = CompletableFuture.failedFuture(ex);
+        }
+
+        load.whenComplete((result, error) -> {
+            this.loading.remove(key, created);
+            if (error != null) {
+                created.completeExceptionally(error);
+            } else if (result == null) {
+                created.complete(ResolutionResult.notFound());
+            } else {
+                final var resolved = ResolutionResult.result(result.descriptor(), true);
+                this.insert(key, new Entry(resolved, result.weight()));
+                created.complete(resolved);
+            }
+        });
+        return created;
+    }
+
+    private synchronized @Nullable ResolutionResult<CompactDescriptor> lookup(final Key key) {
+        final @Nullable Entry entry = this.entries.get(key);
+        return entry == null ? null : entry.result();
+    }
+
+    private synchronized void insert(final Key key, final Entry entry) {
+        final @Nullable Entry previous = this.entries.put(key, entry);
+        if (previous != null) {
+            this.weight -= previous.weight();
+        }
+        this.weight += entry.weight();
+
+        // evict least recently used, always keeping the newest entry
+        for (final Iterator<Entry> it = this.entries.values().iterator(); this.weight > this.maximumWeight && this.entries.size() > 1;) {
+            final Entry eldest = it.next();
+            it.remove();
+            this.weight -= eldest.weight();
+            this.evictions.increment();
+        }
+    }
+
+    synchronized long weight() {
+        return this.weight;
+    }
+
+    synchronized int size() {
+        return this.entries.size();
+    }
+
+    long hits() {
+        return this.hits.sum();
+    }
+
+    long misses() {
+        return this.misses.sum();
+    }
+
+    long evictions() {
+        return this.evictions.sum();
+    }
+
+}
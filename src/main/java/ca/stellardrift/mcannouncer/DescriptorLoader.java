@@ -0,0 +1,209 @@
+package ca.stellardrift.mcannouncer;
+
+import ca.stellardrift.mcannouncer.util.HashingBodySubscriber;
+import ca.stellardrift.mcannouncer.util.HashingBodySubscriber.HashedBody;
+import ca.stellardrift.mcannouncer.util.Hashes;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.spongepowered.gradle.vanilla.repository.ResolutionResult;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads version descriptors and the files they reference from memory or
+ * the {@link DescriptorStore}, downloading them when necessary.
+ *
+ * <p>Loads that miss the in-memory cache are queued on a {@link FetchScheduler},
+ * so only a limited number of downloads and parses run at once.</p>
+ */
+final class DescriptorLoader {
+    private final HttpClient client;
+    private final DescriptorStore store;
+    private final DescriptorCache cache;
+    private final FetchScheduler scheduler;
+    private final FetchScheduler.Lane<DescriptorCache.@Nullable Loaded> descriptors; // parsed descriptors
+    private final FetchScheduler.Lane<byte @Nullable []> files; // raw contents, of descriptors or the files they reference
+    private final Executor executor;
+    private final InFlightRequests requests;
+
+    DescriptorLoader(
+        final HttpClient client,
+        final DescriptorStore store,
+        final DescriptorCache cache,
+        final FetchScheduler scheduler,
+        final Executor executor,
+        final InFlightRequests requests
+    ) {
+        this.client = client;
+        this.store = store;
+        this.cache = cache;
+        this.scheduler = scheduler;
+        this.descriptors = scheduler.lane();
+        this.files = scheduler.lane();
+        this.executor = executor;
+        this.requests = requests;
+    }
+
+    /**
+     * Load a single version descriptor.
+     *
+     * @param id the version id
+     * @param sha1 the expected hash of the descriptor
+     * @param url the location to download the descriptor from
+     * @param priority how urgently the descriptor is needed
+     * @param cycle the poll cycle this load is part of
+     * @return a future providing the descriptor
+     */
+    CompletableFuture<ResolutionResult<CompactDescriptor>> load(final String id, final String sha1, final String url, final FetchScheduler.Priority priority, final long cycle) {
+        final PipelineEvents.DescriptorLoad event = new PipelineEvents.DescriptorLoad();
+        event.begin();
+        event.source = PipelineEvents.DescriptorLoad.MEMORY;
+        // a background load of the same descriptor may already be queued
+        this.scheduler.prioritize(this.descriptors, sha1, priority, cycle);
+        return this.cache.get(new DescriptorCache.Key(id, sha1), key -> this.scheduler.submit(this.descriptors, key.sha1(), priority, cycle, () -> {
+            final CompletableFuture<byte @Nullable []> contents = this.read(key.sha1(), url, cycle, event);
+            return cancelling(contents.thenApply(bytes -> {
+                try {
+                    return bytes == null ? null : recordSize(event, readDescriptor(bytes));
+                } catch (final IOException ex) {
+                    throw new CompletionException(ex);
+                }
+            }), contents);
+        })).whenComplete(($, error) -> {
+            event.end();
+            if (event.shouldCommit()) {
+                event.cycle = cycle;
+                event.versionId = id;
+                event.commit();
+            }
+        });
+    }
+
+    /**
+     * Load a file referenced by a version descriptor, such as an asset index.
+     *
+     * <p>Files are kept in the same store as descriptors, and downloaded
+     * under the same scheduler limits.</p>
+     *
+     * @param sha1 the expected hash of the file
+     * @param url the location to download the file from
+     * @param priority how urgently the file is needed
+     * @param cycle the poll cycle this load is part of
+     * @return a future providing the file contents, or {@code null} if it could not be found
+     */
+    CompletableFuture<byte @Nullable []> loadFile(final String sha1, final String url, final FetchScheduler.Priority priority, final long cycle) {
+        this.scheduler.prioritize(this.files, sha1, priority, cycle);
+        return this.scheduler.submit(this.files, sha1, priority, cycle, () -> this.read(sha1, url, cycle, null));
+    }
+
+    /**
+     * Read a file from the store, downloading it if it is missing or could not be read.
+     *
+     * <p>A stored copy that fails verification is discarded by the store, and
+     * replaced by the download.</p>
+     */
+    private CompletableFuture<byte @Nullable []> read(
+        final String sha1,
+        final String url,
+        final long cycle,
+        final PipelineEvents.@Nullable DescriptorLoad event
+    ) {
+        if (!this.store.contains(sha1)) {
+            if (event != null) {
+                event.source = PipelineEvents.DescriptorLoad.NETWORK;
+            }
+            return this.download(sha1, url, cycle);
+        }
+
+        if (event != null) {
+            event.source = PipelineEvents.DescriptorLoad.DISK;
+        }
+        final CompletableFuture<byte @Nullable []> result = new CompletableFuture<>();
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return this.store.get(sha1);
+            } catch (final IOException ex) {
+                Logger.warn(ex, "Failed to read {} from the descriptor store, downloading it again", sha1);
+                return null;
+            }
+        }, this.executor).thenCompose(stored -> {
+            if (stored != null || result.isDone()) {
+                return CompletableFuture.completedFuture(stored);
+            }
+            if (event != null) {
+                event.source = PipelineEvents.DescriptorLoad.NETWORK;
+            }
+            final CompletableFuture<byte @Nullable []> downloaded = this.download(sha1, url, cycle);
+            cancelling(result, downloaded);
+            return downloaded;
+        }).whenComplete((contents, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(contents);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Download a file, adding it to the store if it matches the expected hash.
+     */
+    private CompletableFuture<byte @Nullable []> download(final String sha1, final String url, final long cycle) {
+        final CompletableFuture<HttpResponse<HashedBody>> request;
+        try {
+            // the body is verified as it arrives, so anything stored can be trusted
+            request = this.requests.track(this.client.sendAsync(
+                VersionAnnouncer.get(new URI(url)),
+                HashingBodySubscriber.handler(Hashes.fromHex(sha1))
+            ), cycle);
+        } catch (final URISyntaxException | IllegalArgumentException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+
+        return cancelling(request.thenApply(response -> {
+            final @Nullable HashedBody body = response.body();
+            if (response.statusCode() == 200 && body != null) {
+                try {
+                    this.store.put(sha1, body.bytes());
+                    return body.bytes();
+                } catch (final IOException ex) {
+                    throw new CompletionException(ex);
+                }
+            } else {
+                return null;
+            }
+        }), request);
+    }
+
+    /**
+     * Cancel an earlier stage when the scheduler gives up on a later one, aborting any download.
+     */
+    private static <T> CompletableFuture<T> cancelling(final CompletableFuture<T> result, final CompletableFuture<?> source) {
+        result.whenComplete(($, error) -> {
+            if (error instanceof CancellationException) {
+                source.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private static DescriptorCache.Loaded recordSize(final PipelineEvents.DescriptorLoad event, final DescriptorCache.Loaded loaded) {
+        event.size = loaded.weight();
+        return loaded;
+    }
+
+    private static DescriptorCache.Loaded readDescriptor(final byte[] contents) throws IOException {
+        final CompactDescriptor descriptor = CompactDescriptor.parse(contents);
+        return new DescriptorCache.Loaded(descriptor, descriptor.weight());
+    }
+
+}
@@ -0,0 +1,646 @@
+package ca.stellardrift.mcannouncer;
+
+import ca.stellardrift.mcannouncer.util.Hashes;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.tinylog.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A content-addressed store of version descriptors.
+ *
+ * <p>Descriptors are deflated and appended to a single pack file, and located
+ * through a memory-mapped index of fixed-size records keyed by SHA-1. The
+ * index is read once when the store is opened, so lookups never touch the
+ * filesystem, and storing a descriptor already present is free.</p>
+ */
+final class DescriptorStore implements AutoCloseable {
+    private static final int MAGIC = 0x4D434453; // MCDS
+    private static final int FORMAT_VERSION = 1;
+
+    // header: magic, version, record count, reserved
+    private static final int HEADER_SIZE = 32;
+    private static final int COUNT_OFFSET = 8;
+
+    // record: sha1, flags, offset, compressed length, length, created, last access, crc32 of compressed data, reserved
+    static final int RECORD_SIZE = 64;
+    private static final int SHA1_LENGTH = 20;
+    private static final int RECORD_FLAGS = 20;
+    private static final int RECORD_OFFSET = 24;
+    private static final int RECORD_COMPRESSED_LENGTH = 32;
+    private static final int RECORD_LENGTH = 36;
+    private static final int RECORD_CREATED = 40;
+    private static final int RECORD_LAST_ACCESS = 48;
+    private static final int RECORD_CRC = 56;
+
+    private static final int FLAG_DISCARDED = 1; // failed verification, and no longer readable
+
+    private static final int INITIAL_CAPACITY = 1024; // records
+
+    private static final String INDEX_FILE = "descriptors.idx";
+    private static final String PACK_FILE = "descriptors.pack";
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    private static final String COMMIT_FILE = "descriptors.compacted"; // both compacted files are complete
+
+    /**
+     * An entry in the store.
+     *
+     * @param sha1 the hex-encoded SHA-1 hash of the descriptor
+     * @param size the size of the descriptor
+     * @param storedSize the compressed size of the descriptor
+     * @param created when the descriptor was added
+     * @param lastAccess when the descriptor was last read
+     */
+    record Entry(String sha1, int size, int storedSize, Instant created, Instant lastAccess) {
+    }
+
+    private final Path cacheDir;
+    private FileChannel indexChannel; // guarded by this
+    private FileChannel packChannel; // guarded by this
+    private MappedByteBuffer index; // guarded by this
+    private int capacity; // guarded by this
+    private int count; // guarded by this
+    private long packEnd; // guarded by this
+    private final Map<String, Integer> slots = new HashMap<>(); // sha1 -> record, guarded by this
+    private final Object compaction = new Object(); // held for the whole of a compaction, so only one runs at a time
+
+    private DescriptorStore(final Path cacheDir, final FileChannel indexChannel, final FileChannel packChannel) {
+        this.cacheDir = cacheDir;
+        this.indexChannel = indexChannel;
+        this.packChannel = packChannel;
+    }
+
+    /**
+     * Open the store in a cache directory, creating it if necessary.
+     *
+     * <p>Descriptors stored in the older {@code versions/<id>/<sha1>.json}
+     * layout are imported, then removed.</p>
+     *
+     * @param cacheDir the cache directory
+     * @return the opened store
+     * @throws IOException if the store could not be opened
+     */
+    static DescriptorStore open(final Path cacheDir) throws IOException {
+        Files.createDirectories(cacheDir);
+        recoverCompaction(cacheDir);
+        final FileChannel indexChannel = openChannel(cacheDir.resolve(INDEX_FILE));
+        final FileChannel packChannel;
+        try {
+            packChannel = openChannel(cacheDir.resolve(PACK_FILE));
+        } catch (final IOException ex) {
+            indexChannel.close();
+            throw ex;
+        }
+
+        final DescriptorStore store = new DescriptorStore(cacheDir, indexChannel, packChannel);
+        try {
+            store.load();
+            store.migrate(cacheDir.resolve("versions"));
+        } catch (final IOException ex) {
+            store.close();
+            throw ex;
+        }
+        return store;
+    }
+
+    private static FileChannel openChannel(final Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static void recoverCompaction(final Path cacheDir) throws IOException {
+        final Path index = cacheDir.resolve(INDEX_FILE + COMPACTING_SUFFIX);
+        final Path pack = cacheDir.resolve(PACK_FILE + COMPACTING_SUFFIX);
+        final Path commit = cacheDir.resolve(COMMIT_FILE);
+        if (Files.exists(commit)) {
+            // committed, so whichever compacted files remain are complete and must replace the originals
+            if (Files.exists(index) || Files.exists(pack)) {
+                Logger.info("Completing interrupted descriptor store compaction");
+            }
+            if (Files.exists(index)) {
+                moveAtomically(index, cacheDir.resolve(INDEX_FILE));
+            }
+            if (Files.exists(pack)) {
+                moveAtomically(pack, cacheDir.resolve(PACK_FILE));
+            }
+            Files.delete(commit);
+        } else {
+            // never committed, so the originals are intact and any compacted files may be partial
+            Files.deleteIfExists(index);
+            Files.deleteIfExists(pack);
+        }
+    }
+
+    private static void moveAtomically(final Path source, final Path destination) throws IOException {
+        try {
+            Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException ex) {
+            Files.move(source, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private synchronized void load() throws IOException {
+        this.slots.clear();
+        this.count = 0;
+        this.packEnd = 0;
+        final long existing = this.indexChannel.size();
+        if (existing < HEADER_SIZE) {
+            this.map(INITIAL_CAPACITY);
+            this.index.putInt(0, MAGIC);
+            this.index.putInt(4, FORMAT_VERSION);
+            this.index.putInt(COUNT_OFFSET, 0);
+        } else {
+            this.map((int) Math.max(INITIAL_CAPACITY, (existing - HEADER_SIZE) / RECORD_SIZE));
+            if (this.index.getInt(0) != MAGIC || this.index.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Descriptor index is not in a supported format");
+            }
+        }
+
+        final int recorded = Math.min(this.index.getInt(COUNT_OFFSET), this.capacity);
+        final long packSize = this.packChannel.size();
+        for (int slot = 0; slot < recorded; slot++) {
+            final int base = recordBase(slot);
+            final long end = this.index.getLong(base + RECORD_OFFSET) + this.index.getInt(base + RECORD_COMPRESSED_LENGTH);
+            if (end > packSize) {
+                // the pack was not fully written before the index was updated
+                Logger.warn("Descriptor store is truncated, discarding {} trailing entries", recorded - slot);
+                break;
+            }
+            if ((this.index.getInt(base + RECORD_FLAGS) & FLAG_DISCARDED) == 0) {
+                this.slots.put(Hashes.toHex(this.sha1(slot)), slot);
+            }
+            this.count = slot + 1;
+            this.packEnd = Math.max(this.packEnd, end);
+        }
+        this.index.putInt(COUNT_OFFSET, this.count);
+        if (packSize > this.packEnd) {
+            // discard any partially appended data
+            this.packChannel.truncate(this.packEnd);
+        }
+    }
+
+    private void map(final int capacity) throws IOException {
+        this.index = this.indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        this.capacity = capacity;
+    }
+
+    private void migrate(final Path legacy) throws IOException {
+        if (!Files.isDirectory(legacy)) {
+            return;
+        }
+
+        final List<Path> files;
+        try (final Stream<Path> walk = Files.walk(legacy)) {
+            files = walk.filter(file -> file.getFileName().toString().endsWith(".json")).toList();
+        }
+        Logger.info("Migrating {} descriptors into the descriptor store", files.size());
+        for (final Path file : files) {
+            final String expected = file.getFileName().toString().replace(".json", "");
+            final String stored = this.put(Files.readAllBytes(file));
+            if (!stored.equals(expected)) {
+                Logger.warn("Descriptor {} did not match its hash {}, it will be downloaded again when needed", file, expected);
+            }
+        }
+        this.index.force();
+
+        try (final Stream<Path> walk = Files.walk(legacy)) {
+            for (final Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static int recordBase(final int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private boolean isDiscarded(final int slot) {
+        return (this.index.getInt(recordBase(slot) + RECORD_FLAGS) & FLAG_DISCARDED) != 0;
+    }
+
+    private byte[] sha1(final int slot) {
+        final byte[] sha1 = new byte[SHA1_LENGTH];
+        this.index.get(recordBase(slot), sha1);
+        return sha1;
+    }
+
+    /**
+     * Get whether a descriptor is present in the store.
+     *
+     * @param sha1 the hex-encoded SHA-1 hash of the descriptor
+     * @return whether it is present
+     */
+    synchronized boolean contains(final String sha1) {
+        return this.slots.containsKey(sha1);
+    }
+
+    /**
+     * Read a descriptor from the store.
+     *
+     * <p>A descriptor that cannot be read back intact is discarded, so that
+     * it is no longer reported as present and can be stored again.</p>
+     *
+     * @param sha1 the hex-encoded SHA-1 hash of the descriptor
+     * @return the descriptor contents, or {@code null} if not present
+     * @throws IOException if the descriptor could not be read
+     */
+    byte @Nullable [] get(final String sha1) throws IOException {
+        while (true) {
+            final int slot;
+            synchronized (this) {
+                final @Nullable Integer found = this.slots.get(sha1);
+                if (found == null) {
+                    return null;
+                }
+                slot = found;
+            }
+            try {
+                final byte @Nullable [] contents = this.read(sha1, slot);
+                if (contents != null) {
+                    return contents;
+                }
+                // moved by compaction, or discarded, so look it up again
+            } catch (final IOException ex) {
+                this.discard(sha1, slot);
+                throw ex;
+            }
+        }
+    }
+
+    private byte @Nullable [] read(final String sha1, final int slot) throws IOException {
+        final long offset;
+        final int compressedLength;
+        final int length;
+        final int crc;
+        final ByteBuffer compressed;
+        synchronized (this) {
+            if (!Integer.valueOf(slot).equals(this.slots.get(sha1))) {
+                return null; // discarded or compacted away in the meantime
+            }
+            final int base = recordBase(slot);
+            offset = this.index.getLong(base + RECORD_OFFSET);
+            compressedLength = this.index.getInt(base + RECORD_COMPRESSED_LENGTH);
+            length = this.index.getInt(base + RECORD_LENGTH);
+            crc = this.index.getInt(base + RECORD_CRC);
+            this.index.putLong(base + RECORD_LAST_ACCESS, System.currentTimeMillis());
+
+            // read while holding the lock, since compaction moves data around
+            compressed = ByteBuffer.allocate(compressedLength);
+            while (compressed.hasRemaining()) {
+                if (this.packChannel.read(compressed, offset + compressed.position()) < 0) {
+                    throw new IOException("Unexpected end of descriptor pack while reading " + sha1);
+                }
+            }
+        }
+
+        final CRC32 check = new CRC32();
+        check.update(compressed.array());
+        if ((int) check.getValue() != crc) {
+            throw new IOException("Stored descriptor " + sha1 + " is corrupt");
+        }
+
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array());
+            final byte[] result = new byte[length];
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                final int inflated = inflater.inflate(result, read, length - read);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                read += inflated;
+            }
+            if (read != length) {
+                throw new IOException("Stored descriptor " + sha1 + " is truncated");
+            }
+            return result;
+        } catch (final DataFormatException ex) {
+            throw new IOException("Stored descriptor " + sha1 + " is corrupt", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Stop serving a record that failed verification.
+     */
+    private synchronized void discard(final String sha1, final int slot) {
+        if (!Integer.valueOf(slot).equals(this.slots.get(sha1))) {
+            return;
+        }
+        Logger.warn("Discarding corrupt descriptor {} from the store, it will be downloaded again when needed", sha1);
+        this.slots.remove(sha1);
+        final int base = recordBase(slot);
+        this.index.putInt(base + RECORD_FLAGS, this.index.getInt(base + RECORD_FLAGS) | FLAG_DISCARDED);
+    }
+
+    /**
+     * Add a descriptor to the store, unless an identical one is already present.
+     *
+     * @param contents the raw descriptor
+     * @return the hex-encoded SHA-1 hash the descriptor is stored under
+     * @throws IOException if the descriptor could not be written
+     */
+    String put(final byte[] contents) throws IOException {
+        final String sha1 = Hashes.toHex(Hashes.sha1(contents));
+        this.put(sha1, contents);
+        return sha1;
+    }
+
+    /**
+     * Add a descriptor whose hash has already been verified.
+     *
+     * @param sha1 the hex-encoded SHA-1 hash of {@code contents}
+     * @param contents the raw descriptor
+     * @throws IOException if the descriptor could not be written
+     */
+    void put(final String sha1, final byte[] contents) throws IOException {
+        if (this.contains(sha1)) {
+            return;
+        }
+
+        final byte[] compressed = deflate(contents);
+        final CRC32 crc = new CRC32();
+        crc.update(compressed);
+
+        synchronized (this) {
+            if (this.slots.containsKey(sha1)) {
+                return;
+            }
+
+            final long offset = this.packEnd;
+            final ByteBuffer data = ByteBuffer.wrap(compressed);
+            while (data.hasRemaining()) {
+                this.packChannel.write(data, offset + data.position());
+            }
+            this.packEnd = offset + compressed.length;
+
+            if (this.count == this.capacity) {
+                this.map(this.capacity * 2);
+            }
+            final int slot = this.count;
+            final int base = recordBase(slot);
+            final long now = System.currentTimeMillis();
+            this.index.put(base, Hashes.fromHex(sha1));
+            this.index.putInt(base + RECORD_FLAGS, 0);
+            this.index.putLong(base + RECORD_OFFSET, offset);
+            this.index.putInt(base + RECORD_COMPRESSED_LENGTH, compressed.length);
+            this.index.putInt(base + RECORD_LENGTH, contents.length);
+            this.index.putLong(base + RECORD_CREATED, now);
+            this.index.putLong(base + RECORD_LAST_ACCESS, now);
+            this.index.putInt(base + RECORD_CRC, (int) crc.getValue());
+            // only publish the record once it is complete
+            this.index.putInt(COUNT_OFFSET, ++this.count);
+            this.slots.put(sha1, slot);
+        }
+    }
+
+    private static byte[] deflate(final byte[] contents) {
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(contents);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(contents.length / 4);
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * List every descriptor in the store.
+     *
+     * @return a snapshot of the entries, oldest first
+     */
+    synchronized List<Entry> entries() {
+        final List<Entry> entries = new ArrayList<>(this.slots.size());
+        for (int slot = 0; slot < this.count; slot++) {
+            if (this.isDiscarded(slot)) {
+                continue;
+            }
+            final int base = recordBase(slot);
+            entries.add(new Entry(
+                Hashes.toHex(this.sha1(slot)),
+                this.index.getInt(base + RECORD_LENGTH),
+                this.index.getInt(base + RECORD_COMPRESSED_LENGTH),
+                Instant.ofEpochMilli(this.index.getLong(base + RECORD_CREATED)),
+                Instant.ofEpochMilli(this.index.getLong(base + RECORD_LAST_ACCESS))
+            ));
+        }
+        return entries;
+    }
+
+    /**
+     * Remove descriptors from the store, compacting the pack to reclaim their space.
+     *
+     * <p>The remaining descriptors are copied to a new pack and index. Once
+     * both are fully written, a commit marker is created, and only then do
+     * they replace the originals. The bulk of the copy happens without
+     * blocking reads and writes, which only wait while descriptors stored in
+     * the meantime are brought across and the new files are swapped in. If
+     * interrupted, compaction is completed the next time the store is opened
+     * if it was committed, and rolled back otherwise.</p>
+     *
+     * @param sha1s the hex-encoded SHA-1 hashes of descriptors to remove
+     * @return the number of bytes reclaimed from the pack
+     * @throws IOException if the store could not be compacted
+     */
+    long remove(final Set<String> sha1s) throws IOException {
+        synchronized (this.compaction) {
+            final FileChannel source;
+            final int snapshot;
+            final List<Integer> retained = new ArrayList<>();
+            final ByteBuffer records;
+            synchronized (this) {
+                source = this.packChannel;
+                snapshot = this.count;
+                for (int slot = 0; slot < snapshot; slot++) {
+                    if (!this.isDiscarded(slot) && !sha1s.contains(Hashes.toHex(this.sha1(slot)))) {
+                        retained.add(slot);
+                    }
+                }
+                if (retained.size() == snapshot) {
+                    return 0;
+                }
+                records = ByteBuffer.allocate(retained.size() * RECORD_SIZE);
+                for (int i = 0; i < retained.size(); i++) {
+                    records.put(i * RECORD_SIZE, this.index, recordBase(retained.get(i)), RECORD_SIZE);
+                }
+            }
+
+            final Path newIndex = this.cacheDir.resolve(INDEX_FILE + COMPACTING_SUFFIX);
+            final Path newPack = this.cacheDir.resolve(PACK_FILE + COMPACTING_SUFFIX);
+            boolean committed = false;
+            final FileChannel pack = FileChannel.open(newPack, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            try {
+                // data already in the pack is never rewritten, only appended to, so it can be copied without the lock
+                long offset = 0;
+                for (int i = 0; i < retained.size(); i++) {
+                    offset = copyRecord(source, records, i * RECORD_SIZE, pack, offset);
+                }
+
+                synchronized (this) {
+                    if (!this.packChannel.isOpen()) {
+                        throw new IOException("Descriptor store was closed during compaction");
+                    }
+                    this.finishCompaction(sha1s, retained, records, snapshot, pack, offset, newIndex);
+                    committed = true;
+                    pack.close(); // before moving it into place
+                    final long before = this.packEnd;
+                    this.replaceFiles(newIndex, newPack);
+                    return before - this.packEnd;
+                }
+            } catch (final IOException ex) {
+                if (!committed) {
+                    Files.deleteIfExists(newIndex);
+                    Files.deleteIfExists(newPack);
+                    Files.deleteIfExists(this.cacheDir.resolve(COMMIT_FILE));
+                }
+                throw ex;
+            } finally {
+                pack.close();
+            }
+        }
+    }
+
+    private void replaceFiles(final Path newIndex, final Path newPack) throws IOException {
+        final Path indexFile = this.cacheDir.resolve(INDEX_FILE);
+        final Path packFile = this.cacheDir.resolve(PACK_FILE);
+        this.indexChannel.close();
+        this.packChannel.close();
+        try {
+            moveAtomically(newIndex, indexFile);
+            moveAtomically(newPack, packFile);
+        } finally {
+            // complete whatever was left undone
+            recoverCompaction(this.cacheDir);
+            this.indexChannel = openChannel(indexFile);
+            this.packChannel = openChannel(packFile);
+            this.load();
+        }
+    }
+
+    /**
+     * Bring across descriptors stored while the pack was being copied, then write and commit the new index.
+     *
+     * <p>Must be called while holding the lock, until the compacted files have been swapped in.</p>
+     */
+    private void finishCompaction(
+        final Set<String> sha1s,
+        final List<Integer> retained,
+        final ByteBuffer copied,
+        final int snapshot,
+        final FileChannel pack,
+        final long copiedEnd,
+        final Path newIndex
+    ) throws IOException {
+        final List<Integer> appended = new ArrayList<>();
+        for (int slot = snapshot; slot < this.count; slot++) {
+            if (!this.isDiscarded(slot) && !sha1s.contains(Hashes.toHex(this.sha1(slot)))) {
+                appended.add(slot);
+            }
+        }
+
+        long offset = copiedEnd;
+        final int total = retained.size() + appended.size();
+        final ByteBuffer records = ByteBuffer.allocate(HEADER_SIZE + Math.max(INITIAL_CAPACITY, total) * RECORD_SIZE);
+        records.putInt(0, MAGIC);
+        records.putInt(4, FORMAT_VERSION);
+        records.putInt(COUNT_OFFSET, total);
+        for (int i = 0; i < retained.size(); i++) {
+            // reads and discards since the snapshot still need to be kept
+            final int base = recordBase(retained.get(i));
+            final int target = recordBase(i);
+            records.put(target, copied, i * RECORD_SIZE, RECORD_SIZE);
+            records.putInt(target + RECORD_FLAGS, this.index.getInt(base + RECORD_FLAGS));
+            records.putLong(target + RECORD_LAST_ACCESS, this.index.getLong(base + RECORD_LAST_ACCESS));
+        }
+        for (int i = 0; i < appended.size(); i++) {
+            final int target = recordBase(retained.size() + i);
+            records.put(target, this.index, recordBase(appended.get(i)), RECORD_SIZE);
+            offset = copyRecord(this.packChannel, records, target, pack, offset);
+        }
+        pack.force(true);
+
+        try (final FileChannel index = FileChannel.open(newIndex, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (records.hasRemaining()) {
+                index.write(records);
+            }
+            index.force(true);
+        }
+        commit(this.cacheDir.resolve(COMMIT_FILE));
+    }
+
+    /**
+     * Append a record's data to the new pack, pointing the record at its new location.
+     */
+    private static long copyRecord(final FileChannel source, final ByteBuffer records, final int base, final FileChannel pack, final long offset) throws IOException {
+        final long from = records.getLong(base + RECORD_OFFSET);
+        final int length = records.getInt(base + RECORD_COMPRESSED_LENGTH);
+        long copied = 0;
+        while (copied < length) {
+            copied += source.transferTo(from + copied, length - copied, pack);
+        }
+        records.putLong(base + RECORD_OFFSET, offset);
+        return offset + length;
+    }
+
+    /**
+     * Durably create the commit marker, after which the compacted files are always put in place.
+     */
+    private static void commit(final Path marker) throws IOException {
+        try (final FileChannel channel = FileChannel.open(marker, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    synchronized int size() {
+        return this.slots.size();
+    }
+
+    /**
+     * Get the size of the pack file.
+     *
+     * @return the stored size, in bytes
+     */
+    synchronized long packSize() {
+        return this.packEnd;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        final FileChannel pack = this.packChannel;
+        final FileChannel index = this.indexChannel;
+        try (pack; index) {
+            if (this.index != null) {
+                this.index.force();
+            }
+        }
+    }
+
+}
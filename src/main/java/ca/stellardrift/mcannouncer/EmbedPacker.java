@@ -0,0 +1,232 @@
+package ca.stellardrift.mcannouncer;
+
+import ca.stellardrift.mcannouncer.util.WebhookUtil;
+import club.minnced.discord.webhook.send.WebhookEmbed;
+import club.minnced.discord.webhook.send.WebhookEmbedBuilder;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.spongepowered.gradle.vanilla.internal.util.Pair;
+import org.tinylog.Logger;
+
+import java.net.URL;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts comparison reports into embeds, and packs those embeds into as few messages as possible.
+ *
+ * <p>Every limit Discord places on embeds is enforced: sections are split
+ * across fields, reports with too many fields are continued in further
+ * embeds, and consecutive embeds share a message for as long as their
+ * exact sizes allow.</p>
+ */
+final class EmbedPacker {
+    private static final String FOOTER = "Last updated";
+    private static final String ELLIPSIS = "…";
+
+    private final String changelogUrlFormat;
+
+    EmbedPacker(final String changelogUrlFormat) {
+        this.changelogUrlFormat = changelogUrlFormat;
+    }
+
+    /**
+     * Pack reports into messages.
+     *
+     * <p>Reports that request it are skipped when they have no sections.
+     * Embeds are never reordered: reading every message in turn gives the
+     * embeds in report order, with each continuation following its report.</p>
+     *
+     * @param reports the reports to pack
+     * @param cycle the poll cycle the reports were produced by
+     * @return the embeds for each message
+     */
+    List<List<WebhookEmbed>> pack(final List<ComparisonReport> reports, final long cycle) {
+        final List<Sized> embeds = new ArrayList<>();
+        for (final ComparisonReport report : reports) {
+            if (report.onlyWhenSectionsPresent() && report.sections().isEmpty()) {
+                continue;
+            }
+            for (final WebhookEmbed embed : this.render(report, cycle)) {
+                embeds.add(new Sized(embed, WebhookUtil.totalContentLength(embed)));
+            }
+        }
+
+        return fill(embeds);
+    }
+
+    private record Sized(WebhookEmbed embed, int length) {
+    }
+
+    private static final class Bin {
+        final List<Sized> contents = new ArrayList<>(WebhookUtil.MAX_EMBEDS);
+        int length;
+
+        boolean fits(final Sized embed) {
+            return this.contents.size() < WebhookUtil.MAX_EMBEDS && this.length + embed.length() <= WebhookUtil.MAX_EMBED_LENGTH;
+        }
+
+        void add(final Sized embed) {
+            this.contents.add(embed);
+            this.length += embed.length();
+        }
+    }
+
+    // greedy over embeds in order, starting a new message whenever the next embed does not fit
+    private static List<List<WebhookEmbed>> fill(final List<Sized> embeds) {
+        final List<Bin> bins = new ArrayList<>();
+        @Nullable Bin current = null;
+        for (final Sized embed : embeds) {
+            if (current == null || !current.fits(embed)) {
+                current = new Bin();
+                bins.add(current);
+            }
+            current.add(embed);
+        }
+
+        final List<List<WebhookEmbed>> messages = new ArrayList<>(bins.size());
+        for (final Bin bin : bins) {
+            final List<WebhookEmbed> message = new ArrayList<>(bin.contents.size());
+            for (final Sized embed : bin.contents) {
+                message.add(embed.embed());
+            }
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * Render a single report as one or more embeds, each within Discord's limits.
+     *
+     * @param report the report to render
+     * @param cycle the poll cycle the report was produced by
+     * @return the embeds, in order
+     */
+    List<WebhookEmbed> render(final ComparisonReport report, final long cycle) {
+        final PipelineEvents.Render event = new PipelineEvents.Render();
+        event.begin();
+        final String title = truncate("Minecraft " + report.versionId(), WebhookUtil.MAX_TITLE_LENGTH);
+        final String url = this.changelogUrlFormat.formatted(report.versionId());
+
+        final StringBuilder description = new StringBuilder(report.description());
+        if (!description.isEmpty() && !report.links().isEmpty()) {
+            description.append("\n\n**Links:**\n");
+            boolean first = true;
+            for (final Pair<String, URL> link : report.links()) {
+                if (!first) {
+                    description.append(" | ");
+                }
+                first = false;
+                description.append("[").append(link.first()).append("](").append(link.second()).append(')');
+            }
+        }
+
+        final List<WebhookEmbed.EmbedField> fields = new ArrayList<>();
+        for (final Map.Entry<String, List<String>> entry : report.sections().entrySet()) {
+            if (!splitSection(entry.getKey(), entry.getValue(), fields)) {
+                Logger.warn("Field '{}' in embed for version '{}' has empty value", entry.getKey(), report.versionId());
+            }
+        }
+
+        final List<WebhookEmbed> embeds = new ArrayList<>(1);
+        Draft draft = new Draft(report, title, url, truncate(description.toString(), WebhookUtil.MAX_DESCRIPTION_LENGTH));
+        for (final WebhookEmbed.EmbedField field : fields) {
+            if (!draft.fits(field)) {
+                embeds.add(draft.build());
+                draft = new Draft(report, truncate(title + " (cont'd " + embeds.size() + ')', WebhookUtil.MAX_TITLE_LENGTH), url, null);
+            }
+            draft.add(field);
+        }
+        embeds.add(draft.build());
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.cycle = cycle;
+            event.versionId = report.versionId();
+            event.embeds = embeds.size();
+            for (final WebhookEmbed embed : embeds) {
+                event.length += WebhookUtil.totalContentLength(embed);
+            }
+            event.commit();
+        }
+        return embeds;
+    }
+
+    // split lines into field values that each fit within a single field, returning whether any fields were produced
+    private static boolean splitSection(final String name, final List<String> lines, final List<WebhookEmbed.EmbedField> fields) {
+        int count = 0;
+        final StringBuilder value = new StringBuilder();
+        for (final String rawLine : lines) {
+            final String line = truncate(rawLine, WebhookUtil.MAX_FIELD_VALUE_LENGTH);
+            if (!value.isEmpty() && value.length() + 1 + line.length() > WebhookUtil.MAX_FIELD_VALUE_LENGTH) {
+                fields.add(field(name, count++, value.toString()));
+                value.setLength(0);
+            }
+            if (!value.isEmpty()) {
+                value.append('\n');
+            }
+            value.append(line);
+        }
+        if (!value.isEmpty()) {
+            fields.add(field(name, count++, value.toString()));
+        }
+        return count > 0;
+    }
+
+    private static WebhookEmbed.EmbedField field(final String name, final int index, final String value) {
+        final String suffix = index == 0 ? "" : " (cont'd " + index + ')';
+        return new WebhookEmbed.EmbedField(false, truncate(name, WebhookUtil.MAX_FIELD_NAME_LENGTH - suffix.length()) + suffix, value);
+    }
+
+    private static String truncate(final String text, final int length) {
+        if (text.length() <= length) {
+            return text;
+        }
+        return text.substring(0, length - ELLIPSIS.length()) + ELLIPSIS;
+    }
+
+    private static final class Draft {
+        private final WebhookEmbedBuilder builder = new WebhookEmbedBuilder();
+        private int fieldCount;
+        private int length;
+
+        Draft(final ComparisonReport report, final String title, final String url, final @Nullable String description) {
+            this.builder
+                .setTitle(new WebhookEmbed.EmbedTitle(title, url))
+                .setColor(report.colour())
+                .setFooter(new WebhookEmbed.EmbedFooter(FOOTER, null));
+            this.length = title.length() + FOOTER.length();
+
+            if (description != null && !description.isEmpty()) {
+                this.builder.setDescription(description);
+                this.length += description.length();
+            }
+
+            if (report.iconUrl() != null) {
+                this.builder.setThumbnailUrl(report.iconUrl());
+            }
+
+            final @Nullable Instant time = report.time();
+            if (time != null) {
+                this.builder.setTimestamp(time);
+            }
+        }
+
+        boolean fits(final WebhookEmbed.EmbedField field) {
+            return this.fieldCount < WebhookUtil.MAX_FIELDS
+                && this.length + field.getName().length() + field.getValue().length() <= WebhookUtil.MAX_EMBED_LENGTH;
+        }
+
+        void add(final WebhookEmbed.EmbedField field) {
+            this.builder.addField(field);
+            this.fieldCount++;
+            this.length += field.getName().length() + field.getValue().length();
+        }
+
+        WebhookEmbed build() {
+            return this.builder.build();
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package ca.stellardrift.mcannouncer;
+
+import org.tinylog.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * The executors used to drive the announcer.
+ *
+ * <p>The timer is only used to trigger polls, while blocking work
+ * (file I/O, HTTP requests, and webhook delivery) is performed on
+ * separate executors, backed by virtual threads when enabled.</p>
+ *
+ * <p>Housekeeping runs on its own minimum-priority thread in either mode,
+ * so it never holds up a poll.</p>
+ */
+final class ExecutionModel implements AutoCloseable {
+    private final ScheduledExecutorService timer;
+    private final ExecutorService io;
+    private final ScheduledExecutorService webhooks;
+    private final ScheduledExecutorService maintenance;
+
+    private ExecutionModel(final ScheduledExecutorService timer, final ExecutorService io, final ScheduledExecutorService webhooks) {
+        this.timer = timer;
+        this.io = io;
+        this.webhooks = webhooks;
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+            .name("announcer-maintenance")
+            .daemon(true)
+            .priority(Thread.MIN_PRIORITY)
+            .factory());
+    }
+
+    static ExecutionModel create(final Config.ExecutionMode mode) {
+        return switch (mode) {
+            case PLATFORM -> {
+                // everything shares one pool
+                final ScheduledExecutorService shared = Executors.newScheduledThreadPool(4);
+                yield new ExecutionModel(shared, shared, shared);
+            }
+            case VIRTUAL -> {
+                // not a daemon, so the timer keeps the process alive
+                final ThreadFactory timerFactory = Thread.ofPlatform()
+                    .name("announcer-timer")
+                    .daemon(false)
+                    .factory();
+                final ThreadFactory ioFactory = Thread.ofVirtual()
+                    .name("announcer-io-", 0)
+                    .factory();
+                final ThreadFactory webhookFactory = Thread.ofVirtual()
+                    .name("announcer-webhook-", 0)
+                    .factory();
+                yield new ExecutionModel(
+                    Executors.newSingleThreadScheduledExecutor(timerFactory),
+                    Executors.newThreadPerTaskExecutor(ioFactory),
+                    // only paces deliveries, sends themselves are asynchronous
+                    Executors.newSingleThreadScheduledExecutor(webhookFactory)
+                );
+            }
+        };
+    }
+
+    /**
+     * The executor that schedules polls.
+     *
+     * <p>No blocking work should be performed on this executor.</p>
+     *
+     * @return the timer
+     */
+    ScheduledExecutorService timer() {
+        return this.timer;
+    }
+
+    /**
+     * The executor for blocking I/O and HTTP requests.
+     *
+     * @return the I/O executor
+     */
+    ExecutorService io() {
+        return this.io;
+    }
+
+    /**
+     * The executor that paces webhook delivery.
+     *
+     * @return the webhook executor
+     */
+    ScheduledExecutorService webhooks() {
+        return this.webhooks;
+    }
+
+    /**
+     * The executor for low-priority background housekeeping.
+     *
+     * @return the maintenance executor
+     */
+    ScheduledExecutorService maintenance() {
+        return this.maintenance;
+    }
+
+    /**
+     * Get the number of tasks waiting on each pooled executor.
+     *
+     * <p>Thread-per-task executors never queue work, so are not included.</p>
+     *
+     * @return queue depths, by executor name
+     */
+    Map<String, IntSupplier> queueDepths() {
+        final Map<String, IntSupplier> depths = new LinkedHashMap<>();
+        if (this.timer == this.io) {
+            addQueue(depths, "shared", this.timer);
+        } else {
+            addQueue(depths, "timer", this.timer);
+            addQueue(depths, "io", this.io);
+            addQueue(depths, "webhooks", this.webhooks);
+        }
+        addQueue(depths, "maintenance", this.maintenance);
+        return depths;
+    }
+
+    private static void addQueue(final Map<String, IntSupplier> depths, final String name, final ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor pool) {
+            depths.put(name, () -> pool.getQueue().size());
+        }
+    }
+
+    @Override
+    public void close() {
+        final List<ExecutorService> executors = List.of(this.timer, this.io, this.webhooks, this.maintenance);
+        for (final ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+
+        for (final ExecutorService executor : executors) {
+            boolean success;
+            try {
+                success = executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException ex) {
+                success = false;
+            }
+
+            if (!success) {
+                Logger.error("Failed to shut down executor within 10 seconds, forcibly terminating now.");
+                executor.shutdownNow();
+            }
+        }
+    }
+
+}
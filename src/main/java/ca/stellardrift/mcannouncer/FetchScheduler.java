@@ -0,0 +1,269 @@
+package ca.stellardrift.mcannouncer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Limits how many descriptor loads run at once, starting the most important first.
+ *
+ * <p>When a large part of the manifest changes at once, this keeps the
+ * newest versions from waiting behind hundreds of historical ones, and
+ * avoids being throttled by the CDN. Requests for a resource that is
+ * already queued or loading in the same {@link Lane} share the existing
+ * load, raising its priority if necessary.</p>
+ *
+ * <p>Each load belongs to the poll cycle that requested it, so when a cycle
+ * overruns, its loads that have not started yet can be dropped rather than
+ * competing with the next cycle.</p>
+ */
+final class FetchScheduler {
+    private final int concurrency;
+    private final Duration timeout;
+
+    private final PriorityQueue<Task<?>> queue = new PriorityQueue<>(Comparator.comparing((Task<?> task) -> task.priority).thenComparingLong(task -> task.sequence)); // guarded by this
+    private int running; // guarded by this
+    private long sequence; // guarded by this
+
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * How urgently a descriptor is needed.
+     *
+     * <p>The versions the manifest marks as latest come first, then releases,
+     * then everything else, and finally speculative background loads. Within
+     * each tier, newer versions come first.</p>
+     *
+     * @param tier the priority tier, lower first
+     * @param time the version's update time, in epoch millis
+     */
+    record Priority(int tier, long time) implements Comparable<Priority> {
+        static final int LATEST = 0;
+        static final int RELEASE = 1;
+        static final int OTHER = 2;
+        static final int BACKGROUND = 3;
+
+        @Override
+        public int compareTo(final Priority that) {
+            final int tier = Integer.compare(this.tier, that.tier);
+            return tier != 0 ? tier : Long.compare(that.time, this.time);
+        }
+    }
+
+    /**
+     * One kind of load, producing a particular type of result.
+     *
+     * <p>Loads are only shared within a lane, so the same key can be loaded
+     * in different forms without one request receiving another's result.</p>
+     *
+     * @param <T> the result type
+     */
+    static final class Lane<T> {
+        private final Map<String, Task<T>> tasks = new HashMap<>(); // queued or running, by key, guarded by the scheduler
+
+        private Lane() {
+        }
+    }
+
+    private static final class Task<T> {
+        final Lane<T> lane;
+        final String key;
+        final Supplier<CompletableFuture<T>> action;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        Priority priority;
+        long cycle;
+        long sequence;
+
+        Task(final Lane<T> lane, final String key, final Priority priority, final long cycle, final Supplier<CompletableFuture<T>> action) {
+            this.lane = lane;
+            this.key = key;
+            this.priority = priority;
+            this.cycle = cycle;
+            this.action = action;
+        }
+    }
+
+    FetchScheduler(final int concurrency, final Duration timeout) {
+        this.concurrency = concurrency;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Create a lane for one kind of load, sharing this scheduler's limits.
+     *
+     * @param <T> the result type
+     * @return a new lane
+     */
+    <T> Lane<T> lane() {
+        return new Lane<>();
+    }
+
+    /**
+     * Schedule a load.
+     *
+     * <p>The timeout applies from when the load starts, not while it is waiting
+     * in the queue. A load that times out is cancelled.</p>
+     *
+     * @param lane the kind of load
+     * @param key identifies the resource being loaded, for coalescing within the lane
+     * @param priority how urgently the result is needed
+     * @param cycle the poll cycle the load is part of, or {@link InFlightRequests#NO_CYCLE}
+     * @param action a function starting the load
+     * @param <T> the result type
+     * @return a future completing with the result of the load
+     */
+    <T> CompletableFuture<T> submit(final Lane<T> lane, final String key, final Priority priority, final long cycle, final Supplier<CompletableFuture<T>> action) {
+        final Task<T> task;
+        synchronized (this) {
+            final @Nullable Task<T> existing = this.raise(lane, key, priority, cycle);
+            if (existing != null) {
+                return existing.result;
+            }
+
+            task = new Task<>(lane, key, priority, cycle, action);
+            task.sequence = this.sequence++;
+            lane.tasks.put(key, task);
+            this.queue.add(task);
+        }
+        this.drain();
+        return task.result;
+    }
+
+    /**
+     * Raise the priority of a load that has not started yet, and keep it from being dropped with an earlier cycle.
+     *
+     * <p>This is needed when a request shares an existing load without
+     * reaching the scheduler itself.</p>
+     *
+     * @param lane the kind of load
+     * @param key identifies the resource being loaded
+     * @param priority the new priority, applied only if more urgent than the current one
+     * @param cycle the poll cycle now waiting on the load, or {@link InFlightRequests#NO_CYCLE}
+     */
+    synchronized void prioritize(final Lane<?> lane, final String key, final Priority priority, final long cycle) {
+        this.raise(lane, key, priority, cycle);
+    }
+
+    private <T> @Nullable Task<T> raise(final Lane<T> lane, final String key, final Priority priority, final long cycle) { // guarded by this
+        final @Nullable Task<T> existing = lane.tasks.get(key);
+        if (existing == null) {
+            return null;
+        }
+        if (existing.cycle != cycle) {
+            // keep the load for as long as anyone still needs it: cycles run in order, and loads outside a cycle are never dropped
+            existing.cycle = existing.cycle == InFlightRequests.NO_CYCLE || cycle == InFlightRequests.NO_CYCLE
+                ? InFlightRequests.NO_CYCLE
+                : Math.max(existing.cycle, cycle);
+        }
+        if (priority.compareTo(existing.priority) < 0 && this.queue.remove(existing)) {
+            existing.priority = priority;
+            this.queue.add(existing);
+        }
+        return existing;
+    }
+
+    /**
+     * Drop every load for a poll cycle that has not started yet.
+     *
+     * <p>Loads that are already running are left to {@link InFlightRequests#cancel(long)}.</p>
+     *
+     * @param cycle the poll cycle
+     * @return the number of loads dropped
+     */
+    int cancel(final long cycle) {
+        final List<Task<?>> dropped = new ArrayList<>();
+        synchronized (this) {
+            for (final Iterator<Task<?>> it = this.queue.iterator(); it.hasNext();) {
+                final Task<?> task = it.next();
+                if (task.cycle == cycle) {
+                    it.remove();
+                    task.lane.tasks.remove(task.key, task);
+                    dropped.add(task);
+                }
+            }
+        }
+        for (final Task<?> task : dropped) {
+            task.result.cancel(false);
+        }
+        return dropped.size();
+    }
+
+    private void drain() {
+        while (true) {
+            final Task<?> next;
+            synchronized (this) {
+                if (this.running >= this.concurrency || this.queue.isEmpty()) {
+                    return;
+                }
+                next = this.queue.poll();
+                this.running++;
+            }
+            this.start(next);
+        }
+    }
+
+    private <T> void start(final Task<T> task) {
+        CompletableFuture<T> load;
+        try {
+            load = task.action.get();
+        } catch (final RuntimeException ex) {
+            load = CompletableFuture.failedFuture(ex);
+        }
+
+        final CompletableFuture<T> started = load;
+        started.copy()
+            .orTimeout(this.timeout.toMillis(), TimeUnit.MILLISECONDS)
+            .whenComplete((result, error) -> {
+                synchronized (this) {
+                    this.running--;
+                    task.lane.tasks.remove(task.key, task);
+                }
+
+                if (error != null) {
+                    if (unwrap(error) instanceof TimeoutException) {
+                        this.timeouts.increment();
+                        started.cancel(true);
+                    }
+                    task.result.completeExceptionally(error);
+                } else {
+                    task.result.complete(result);
+                }
+                this.drain();
+            });
+    }
+
+    private static Throwable unwrap(final Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Get the number of loads waiting to start.
+     *
+     * @return the queue length
+     */
+    synchronized int queued() {
+        return this.queue.size();
+    }
+
+    synchronized int running() {
+        return this.running;
+    }
+
+    long timeouts() {
+        return this.timeouts.sum();
+    }
+
+}
@@ -0,0 +1,85 @@
+package ca.stellardrift.mcannouncer;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A distribution of observations, counted into fixed buckets.
+ *
+ * <p>Observations are lock-free, so a histogram can be updated from any thread.</p>
+ */
+final class Histogram {
+    /**
+     * Bucket bounds suitable for latencies measured in seconds.
+     */
+    static final double[] LATENCY_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300};
+
+    private final double[] bounds; // upper bounds, inclusive
+    private final LongAdder[] buckets; // one extra for +Inf
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram(final double... bounds) {
+        this.bounds = bounds.clone();
+        Arrays.sort(this.bounds);
+        this.buckets = new LongAdder[this.bounds.length + 1];
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    static Histogram latency() {
+        return new Histogram(LATENCY_BUCKETS);
+    }
+
+    void observe(final double value) {
+        int bucket = Arrays.binarySearch(this.bounds, value);
+        if (bucket < 0) {
+            bucket = -bucket - 1;
+        }
+        this.buckets[bucket].increment();
+        this.sum.add(value);
+    }
+
+    /**
+     * Observe a duration, in seconds.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    void observeNanos(final long nanos) {
+        this.observe(nanos / 1e9);
+    }
+
+    /**
+     * Observe the time elapsed since an earlier reading of {@link System#nanoTime()}.
+     *
+     * @param startNanos the start time
+     */
+    void observeSince(final long startNanos) {
+        this.observeNanos(System.nanoTime() - startNanos);
+    }
+
+    double[] bounds() {
+        return this.bounds.clone();
+    }
+
+    /**
+     * Get the number of observations at or below each bound, followed by the total count.
+     *
+     * @return cumulative bucket counts
+     */
+    long[] cumulativeCounts() {
+        final long[] counts = new long[this.buckets.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += this.buckets[i].sum();
+            counts[i] = total;
+        }
+        return counts;
+    }
+
+    double sum() {
+        return this.sum.sum();
+    }
+
+}
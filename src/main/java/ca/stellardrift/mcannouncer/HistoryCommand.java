@@ -0,0 +1,139 @@
+package ca.stellardrift.mcannouncer;
+
+import com.google.gson.JsonParseException;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Queries the {@link ManifestHistory} from the command line.
+ *
+ * <p>With no times, every recorded snapshot is listed. Otherwise, the
+ * versions that changed between the two points in time are printed, with
+ * the second defaulting to now.</p>
+ */
+final class HistoryCommand {
+    static final String NAME = "history";
+    static final String USAGE = "./version-announcer history <config.json file> [<from> [<to>]], "
+        + "where times are an instant (2024-05-01T12:00:00Z), a date (2024-05-01), or a duration before now (P7D)";
+
+    private HistoryCommand() {
+    }
+
+    /**
+     * Run the command.
+     *
+     * @param args all command line arguments, starting with {@value #NAME}
+     * @return the process exit status
+     */
+    static int run(final String[] args) {
+        if (args.length < 2 || args.length > 4) {
+            Logger.error("Incorrect arguments. Usage: {}", USAGE);
+            return 1;
+        }
+        final Instant now = Instant.now();
+        final Instant from;
+        final Instant to;
+        try {
+            from = args.length > 2 ? parseTime(args[2], now) : Instant.MIN;
+            to = args.length > 3 ? parseTime(args[3], now) : now;
+        } catch (final DateTimeParseException ex) {
+            Logger.error("Unable to parse time '{}'. Usage: {}", ex.getParsedString(), USAGE);
+            return 1;
+        }
+        if (from.isAfter(to)) {
+            Logger.error("Start time {} is after end time {}", from, to);
+            return 1;
+        }
+
+        final Config config;
+        try {
+            config = Config.load(Path.of(args[1]));
+        } catch (final IOException | JsonParseException ex) {
+            Logger.error(ex, "Failed to load configuration from {}", args[1]);
+            return 1;
+        }
+        if (!Files.exists(config.cacheDir().resolve(ManifestHistory.LOG_FILE))) {
+            Logger.error("No manifest history has been recorded in {}", config.cacheDir());
+            return 1;
+        }
+
+        try (final ManifestHistory history = ManifestHistory.openReadOnly(config.cacheDir())) {
+            if (args.length == 2) {
+                list(history, System.out);
+            } else {
+                diff(history, from, to, System.out);
+            }
+            return 0;
+        } catch (final IOException ex) {
+            Logger.error(ex, "Failed to read manifest history in {}", config.cacheDir());
+            return 1;
+        }
+    }
+
+    /**
+     * Parse a point in time.
+     *
+     * @param value an instant, a date at the start of which in UTC, or a duration before {@code now}
+     * @param now the current time
+     * @return the point in time
+     * @throws DateTimeParseException if the value is none of these
+     */
+    static Instant parseTime(final String value, final Instant now) {
+        if (value.startsWith("P") || value.startsWith("p")) {
+            return now.minus(Duration.parse(value));
+        } else if (value.indexOf('T') == -1) {
+            return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+        } else {
+            return Instant.parse(value);
+        }
+    }
+
+    private static void list(final ManifestHistory history, final PrintStream out) throws IOException {
+        for (int i = 0; i < history.size(); i++) {
+            final ManifestHistory.Snapshot snapshot = history.snapshot(i);
+            out.println(snapshot.recorded() + "  release " + snapshot.latestRelease() + ", snapshot " + snapshot.latestSnapshot()
+                + "  (" + snapshot.changes() + (snapshot.changes() == 1 ? " version changed)" : " versions changed)"));
+        }
+        out.println(history.size() + " snapshots");
+    }
+
+    private static void diff(final ManifestHistory history, final Instant from, final Instant to, final PrintStream out) throws IOException {
+        final int start = from.equals(Instant.MIN) ? -1 : history.snapshotAt(from);
+        final int end = history.snapshotAt(to);
+        if (end == -1) {
+            out.println("No manifest had been recorded by " + to);
+            return;
+        }
+
+        final List<ManifestHistory.Change> changes = history.changes(start, end);
+        int added = 0;
+        int removed = 0;
+        for (final ManifestHistory.Change change : changes) {
+            final ManifestHistory.@Nullable Version after = change.after();
+            if (after == null) {
+                removed++;
+                out.println("- " + change.id());
+            } else if (change.before() == null) {
+                added++;
+                out.println("+ " + change.id() + " (" + after.type() + ", " + after.time() + ")");
+            } else {
+                out.println("~ " + change.id() + " (" + change.before() + " -> " + after.sha1() + ")");
+            }
+        }
+        out.println((start == -1 ? "From the start of the history" : "From " + history.time(start))
+            + " to " + history.time(end) + ": "
+            + (changes.isEmpty() ? "no changes" : AssetIndexDiff.describe(added, removed, changes.size() - added - removed)));
+    }
+
+}
@@ -0,0 +1,57 @@
+package ca.stellardrift.mcannouncer;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks outgoing HTTP requests so they can be aborted when a poll cycle overruns.
+ *
+ * <p>Each request is tagged with the poll cycle that started it, so an
+ * overrunning cycle only aborts its own requests. Requests made outside of
+ * a poll cycle, such as when pre-warming, are never aborted.</p>
+ */
+final class InFlightRequests {
+    /**
+     * The cycle of requests that are not part of any poll cycle.
+     */
+    static final long NO_CYCLE = 0;
+
+    private final Map<CompletableFuture<?>, Long> requests = new ConcurrentHashMap<>();
+
+    /**
+     * Track a request until it completes.
+     *
+     * @param request the future returned by {@link java.net.http.HttpClient#sendAsync}
+     * @param cycle the poll cycle the request is part of, or {@link #NO_CYCLE}
+     * @param <T> the response type
+     * @return the request future
+     */
+    <T> CompletableFuture<T> track(final CompletableFuture<T> request, final long cycle) {
+        this.requests.put(request, cycle);
+        request.whenComplete(($, $$) -> this.requests.remove(request));
+        return request;
+    }
+
+    /**
+     * Abort every request in flight for a poll cycle.
+     *
+     * @param cycle the poll cycle
+     * @return the number of requests cancelled
+     */
+    int cancel(final long cycle) {
+        int cancelled = 0;
+        for (final Map.Entry<CompletableFuture<?>, Long> request : this.requests.entrySet()) {
+            // cancelling a future from HttpClient.sendAsync aborts the exchange
+            if (request.getValue() == cycle && request.getKey().cancel(true)) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    int size() {
+        return this.requests.size();
+    }
+
+}
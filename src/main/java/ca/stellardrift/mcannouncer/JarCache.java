@@ -0,0 +1,197 @@
+package ca.stellardrift.mcannouncer;
+
+import ca.stellardrift.mcannouncer.util.Hashes;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Downloads client and server jars for comparison, keeping the most recently used on disk.
+ *
+ * <p>Jars are too large for the {@link DescriptorStore}, so each is kept as
+ * its own file, named by its hash. A download is only kept once its hash has
+ * been verified, and concurrent requests for the same jar share one download.</p>
+ */
+final class JarCache {
+    private static final String EXTENSION = ".jar";
+
+    private final HttpClient client;
+    private final Path directory;
+    private final Config.Jars config;
+    private final Executor executor;
+    private final InFlightRequests requests;
+    private final ConcurrentHashMap<String, CompletableFuture<Path>> downloads = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder downloaded = new LongAdder();
+    private final LongAdder downloadedBytes = new LongAdder();
+
+    JarCache(final HttpClient client, final Path directory, final Config.Jars config, final Executor executor, final InFlightRequests requests) {
+        this.client = client;
+        this.directory = directory;
+        this.config = config;
+        this.executor = executor;
+        this.requests = requests;
+    }
+
+    /**
+     * Get the names of the downloads whose jars should be compared.
+     *
+     * @return download names, as used in version descriptors
+     */
+    Set<String> downloads() {
+        return this.config.downloads();
+    }
+
+    Executor executor() {
+        return this.executor;
+    }
+
+    /**
+     * Get a jar, downloading it if it is not already on disk.
+     *
+     * @param sha1 the expected hash of the jar
+     * @param url the location to download the jar from
+     * @param cycle the poll cycle the jar is needed for
+     * @return a future providing the location of the jar on disk
+     */
+    CompletableFuture<Path> get(final String sha1, final String url, final long cycle) {
+        final Path file = this.directory.resolve(sha1 + EXTENSION);
+        if (Files.isRegularFile(file)) {
+            this.hits.increment();
+            try {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (final IOException ex) {
+                Logger.debug(ex, "Failed to mark {} as recently used", file);
+            }
+            return CompletableFuture.completedFuture(file);
+        }
+
+        final CompletableFuture<Path> result = new CompletableFuture<>();
+        final @Nullable CompletableFuture<Path> existing = this.downloads.putIfAbsent(sha1, result);
+        if (existing != null) {
+            return existing;
+        }
+        this.download(sha1, url, file, cycle).whenComplete((path, error) -> {
+            this.downloads.remove(sha1, result);
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(path);
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<Path> download(final String sha1, final String url, final Path file, final long cycle) {
+        final Path temporary;
+        final CompletableFuture<HttpResponse<Path>> request;
+        try {
+            Files.createDirectories(this.directory);
+            temporary = Files.createTempFile(this.directory, sha1, ".part");
+            request = this.requests.track(this.client.sendAsync(VersionAnnouncer.get(new URI(url)), HttpResponse.BodyHandlers.ofFile(temporary)), cycle);
+        } catch (final IOException | URISyntaxException | IllegalArgumentException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+
+        return request.thenApplyAsync(response -> {
+            try {
+                if (response.statusCode() != 200) {
+                    throw new IOException("Unexpected status " + response.statusCode() + " downloading " + url);
+                }
+                try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ)) {
+                    final MessageDigest digest = Hashes.sha1();
+                    digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                    if (!Arrays.equals(digest.digest(), Hashes.fromHex(sha1))) {
+                        throw new IOException("Hash mismatch downloading " + url);
+                    }
+                    this.downloadedBytes.add(channel.size());
+                }
+                try {
+                    Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (final AtomicMoveNotSupportedException ex) {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+                this.downloaded.increment();
+                this.prune(file);
+                return file;
+            } catch (final IOException ex) {
+                throw new CompletionException(ex);
+            }
+        }, this.executor).whenComplete(($, error) -> {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (final IOException ex) {
+                Logger.debug(ex, "Failed to delete partial download {}", temporary);
+            }
+        });
+    }
+
+    /**
+     * Delete all but the most recently used jars.
+     */
+    private void prune(final Path keep) throws IOException {
+        final List<Path> jars;
+        try (final Stream<Path> files = Files.list(this.directory)) {
+            jars = files.filter(path -> path.getFileName().toString().endsWith(EXTENSION)).toList();
+        }
+        if (jars.size() <= this.config.keep()) {
+            return;
+        }
+
+        final Map<Path, FileTime> lastUsed = new HashMap<>();
+        for (final Path jar : jars) {
+            try {
+                lastUsed.put(jar, Files.getLastModifiedTime(jar));
+            } catch (final IOException ex) {
+                Logger.debug(ex, "Failed to read modification time of {}", jar);
+            }
+        }
+        final List<Path> byAge = new ArrayList<>(lastUsed.keySet());
+        byAge.sort(Comparator.comparing(lastUsed::get, Comparator.reverseOrder()));
+        for (int i = this.config.keep(); i < byAge.size(); i++) {
+            if (!byAge.get(i).equals(keep)) {
+                Files.deleteIfExists(byAge.get(i));
+            }
+        }
+    }
+
+    long hits() {
+        return this.hits.sum();
+    }
+
+    long downloaded() {
+        return this.downloaded.sum();
+    }
+
+    long downloadedBytes() {
+        return this.downloadedBytes.sum();
+    }
+
+}
@@ -0,0 +1,237 @@
+package ca.stellardrift.mcannouncer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.ZipException;
+
+/**
+ * The differences between the entries of two jars.
+ *
+ * <p>Only the central directory at the end of each jar is read, through a
+ * memory-mapped channel, so nothing is extracted or decompressed. Entries
+ * are compared by name, CRC-32 and uncompressed size.</p>
+ *
+ * @param classes changes to class files
+ * @param resources changes to every other file
+ */
+record JarDiff(Counts classes, Counts resources) {
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int ENTRY_SIGNATURE = 0x02014b50;
+    private static final int ENTRY_SIZE = 46;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final long ZIP64_MAGIC = 0xffffffffL;
+
+    /**
+     * Counts of changed entries.
+     *
+     * @param added entries only in the modified jar
+     * @param removed entries only in the original jar
+     * @param changed entries whose CRC or size differ
+     */
+    record Counts(int added, int removed, int changed) {
+        boolean isEmpty() {
+            return this.added + this.removed + this.changed == 0;
+        }
+    }
+
+    /**
+     * An entry of a jar, as recorded in its central directory.
+     *
+     * @param crc the CRC-32 of the uncompressed contents
+     * @param size the uncompressed size
+     */
+    record Entry(int crc, long size) {
+    }
+
+    /**
+     * Compare two jars, reading both central directories at once.
+     *
+     * @param original the original jar
+     * @param modified the modified jar
+     * @param executor the executor to read jars on
+     * @return a future providing the differences
+     */
+    static CompletableFuture<JarDiff> compare(final Path original, final Path modified, final Executor executor) {
+        final CompletableFuture<Map<String, Entry>> before = CompletableFuture.supplyAsync(() -> readUnchecked(original), executor);
+        final CompletableFuture<Map<String, Entry>> after = CompletableFuture.supplyAsync(() -> readUnchecked(modified), executor);
+        return before.thenCombine(after, JarDiff::compare);
+    }
+
+    /**
+     * Compare the entries of two jars.
+     *
+     * @param original entries of the original jar
+     * @param modified entries of the modified jar
+     * @return the differences
+     */
+    static JarDiff compare(final Map<String, Entry> original, final Map<String, Entry> modified) {
+        final int[] classes = new int[3]; // added, removed, changed
+        final int[] resources = new int[3];
+        for (final Map.Entry<String, Entry> entry : modified.entrySet()) {
+            final @Nullable Entry previous = original.get(entry.getKey());
+            if (previous == null) {
+                (isClass(entry.getKey()) ? classes : resources)[0]++;
+            } else if (!previous.equals(entry.getValue())) {
+                (isClass(entry.getKey()) ? classes : resources)[2]++;
+            }
+        }
+        for (final String name : original.keySet()) {
+            if (!modified.containsKey(name)) {
+                (isClass(name) ? classes : resources)[1]++;
+            }
+        }
+        return new JarDiff(new Counts(classes[0], classes[1], classes[2]), new Counts(resources[0], resources[1], resources[2]));
+    }
+
+    private static boolean isClass(final String name) {
+        return name.endsWith(".class");
+    }
+
+    /**
+     * Format this diff for a report section.
+     *
+     * @return the lines of the section, empty if nothing changed
+     */
+    List<String> lines() {
+        if (this.classes.isEmpty() && this.resources.isEmpty()) {
+            return List.of();
+        } else if (this.resources.isEmpty()) {
+            return List.of(line("Classes", this.classes));
+        } else if (this.classes.isEmpty()) {
+            return List.of(line("Resources", this.resources));
+        } else {
+            return List.of(line("Classes", this.classes), line("Resources", this.resources));
+        }
+    }
+
+    private static String line(final String title, final Counts counts) {
+        return "__" + title + "__: " + AssetIndexDiff.describe(counts.added(), counts.removed(), counts.changed());
+    }
+
+    private static Map<String, Entry> readUnchecked(final Path jar) {
+        try {
+            return read(jar);
+        } catch (final IOException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    /**
+     * Read the file entries of a jar from its central directory.
+     *
+     * @param jar the jar to read
+     * @return entries by name, excluding directories
+     * @throws IOException if the jar could not be read, or is not a valid zip file
+     */
+    static Map<String, Entry> read(final Path jar) throws IOException {
+        try (final FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            if (fileSize < END_SIZE) {
+                throw new ZipException("Too short to be a zip file: " + jar);
+            }
+
+            // the end record is followed by a comment of at most 64k
+            final long tailStart = Math.max(0, fileSize - END_SIZE - 0xffff);
+            final ByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, tailStart, fileSize - tailStart).order(ByteOrder.LITTLE_ENDIAN);
+            int end = tail.limit() - END_SIZE;
+            while (end >= 0 && tail.getInt(end) != END_SIGNATURE) {
+                end--;
+            }
+            if (end < 0) {
+                throw new ZipException("No end of central directory record in " + jar);
+            }
+
+            long entries = tail.getShort(end + 10) & 0xffff;
+            long directorySize = tail.getInt(end + 12) & ZIP64_MAGIC;
+            long directoryOffset = tail.getInt(end + 16) & ZIP64_MAGIC;
+            if (entries == 0xffff || directorySize == ZIP64_MAGIC || directoryOffset == ZIP64_MAGIC) {
+                final int locator = end - ZIP64_LOCATOR_SIZE;
+                if (locator < 0 || tail.getInt(locator) != ZIP64_LOCATOR_SIGNATURE) {
+                    throw new ZipException("Missing zip64 end of central directory locator in " + jar);
+                }
+                final long zip64End = tail.getLong(locator + 8);
+                if (zip64End < 0 || zip64End + ZIP64_END_SIZE > fileSize) {
+                    throw new ZipException("Invalid zip64 end of central directory offset in " + jar);
+                }
+                final ByteBuffer record = channel.map(FileChannel.MapMode.READ_ONLY, zip64End, ZIP64_END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                if (record.getInt(0) != ZIP64_END_SIGNATURE) {
+                    throw new ZipException("Invalid zip64 end of central directory record in " + jar);
+                }
+                entries = record.getLong(32);
+                directorySize = record.getLong(40);
+                directoryOffset = record.getLong(48);
+            }
+            if (directoryOffset < 0 || directorySize > Integer.MAX_VALUE || directoryOffset + directorySize > fileSize) {
+                throw new ZipException("Invalid central directory bounds in " + jar);
+            }
+
+            final ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset, directorySize).order(ByteOrder.LITTLE_ENDIAN);
+            final Map<String, Entry> result = HashMap.newHashMap((int) Math.min(entries, 1 << 20));
+            byte[] name = new byte[256];
+            int position = 0;
+            while (position + ENTRY_SIZE <= directory.limit()) {
+                if (directory.getInt(position) != ENTRY_SIGNATURE) {
+                    throw new ZipException("Invalid central directory entry at offset " + position + " in " + jar);
+                }
+                final int crc = directory.getInt(position + 16);
+                long size = directory.getInt(position + 24) & ZIP64_MAGIC;
+                final int nameLength = directory.getShort(position + 28) & 0xffff;
+                final int extraLength = directory.getShort(position + 30) & 0xffff;
+                final int commentLength = directory.getShort(position + 32) & 0xffff;
+                final int next = position + ENTRY_SIZE + nameLength + extraLength + commentLength;
+                if (next > directory.limit()) {
+                    throw new ZipException("Truncated central directory entry at offset " + position + " in " + jar);
+                }
+
+                if (name.length < nameLength) {
+                    name = new byte[nameLength];
+                }
+                directory.get(position + ENTRY_SIZE, name, 0, nameLength);
+                if (size == ZIP64_MAGIC) {
+                    size = zip64Size(directory, position + ENTRY_SIZE + nameLength, extraLength, size);
+                }
+                if (nameLength == 0 || name[nameLength - 1] != '/') { // skip directories
+                    result.put(new String(name, 0, nameLength, StandardCharsets.UTF_8), new Entry(crc, size));
+                }
+                position = next;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Find the real uncompressed size of a large entry in its zip64 extra field.
+     */
+    private static long zip64Size(final ByteBuffer directory, final int extraStart, final int extraLength, final long fallback) {
+        int field = extraStart;
+        while (field + 4 <= extraStart + extraLength) {
+            final int id = directory.getShort(field) & 0xffff;
+            final int length = directory.getShort(field + 2) & 0xffff;
+            if (id == ZIP64_EXTRA && length >= 8) {
+                // the uncompressed size comes first, as it is always the one replaced
+                return directory.getLong(field + 4);
+            }
+            field += 4 + length;
+        }
+        return fallback;
+    }
+
+}
@@ -0,0 +1,447 @@
+package ca.stellardrift.mcannouncer;
+
+import ca.stellardrift.mcannouncer.util.AtomicFiles;
+import ca.stellardrift.mcannouncer.util.Hashes;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.spongepowered.gradle.vanilla.internal.util.FileUtils;
+import org.tinylog.Logger;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fetches the version manifest using conditional requests.
+ *
+ * <p>The last parsed {@link ManifestState} is retained, and returned as-is
+ * whenever the server reports that the manifest has not been modified.</p>
+ */
+final class ManifestFetcher {
+    private static final String MANIFEST_ENDPOINT = "https://piston-meta.mojang.com/mc/game/version_manifest_v2.json";
+    private static final HttpResponse.BodyHandler<@Nullable InputStream> MANIFEST_BODY = info -> info.statusCode() == 200
+        ? HttpResponse.BodySubscribers.ofInputStream()
+        : HttpResponse.BodySubscribers.replacing(null);
+
+    private final HttpClient client;
+    private final Path cacheLocation;
+    private final DescriptorLoader descriptors;
+    private final ComparisonMemo comparisons;
+    private final @Nullable JarCache jars;
+    private final @Nullable ManifestHistory history;
+    private final InFlightRequests requests;
+    private final Executor executor;
+    private final Path manifestFile;
+    private final Path etagFile;
+    private final Path lastModifiedFile;
+
+    private final LongAdder notModifiedResponses = new LongAdder();
+    private final LongAdder modifiedResponses = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+
+    private volatile @Nullable ResponseInfo lastResponse;
+    private volatile @Nullable ManifestState current;
+    private volatile @Nullable String etag;
+    private volatile @Nullable String lastModified;
+
+    ManifestFetcher(
+        final HttpClient client,
+        final Path cacheLocation,
+        final DescriptorLoader descriptors,
+        final ComparisonMemo comparisons,
+        final @Nullable JarCache jars,
+        final @Nullable ManifestHistory history,
+        final InFlightRequests requests,
+        final Executor executor
+    ) {
+        this.client = client;
+        this.cacheLocation = cacheLocation;
+        this.descriptors = descriptors;
+        this.comparisons = comparisons;
+        this.jars = jars;
+        this.history = history;
+        this.requests = requests;
+        this.executor = executor;
+        this.manifestFile = cacheLocation.resolve("manifest.json");
+        this.etagFile = cacheLocation.resolve("manifest.etag");
+        this.lastModifiedFile = cacheLocation.resolve("manifest.last-modified");
+    }
+
+    /**
+     * Fetch the manifest, only downloading it if it has changed since the last fetch.
+     *
+     * @param trustExisting whether a manifest already on disk can be used without contacting the server,
+     *     when nothing has been loaded yet
+     * @param cycle the poll cycle this fetch is part of
+     * @return a future providing the current manifest state
+     */
+    public CompletableFuture<ManifestState> fetch(final boolean trustExisting, final long cycle) {
+        if (this.current == null) {
+            try {
+                this.etag = readValidator(this.etagFile);
+                this.lastModified = readValidator(this.lastModifiedFile);
+            } catch (final IOException ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+
+            if (trustExisting && this.etag != null && Files.exists(this.manifestFile)) {
+                // load and return stored
+                try {
+                    this.current = this.readStored(cycle);
+                    return CompletableFuture.completedFuture(this.current);
+                } catch (final IOException | JsonSyntaxException ex) {
+                    Logger.error(ex, "Failed to load existing version manifest from disk, re-downloading");
+                }
+            }
+        }
+
+        this.lastResponse = null;
+        final HttpRequest.Builder builder = VersionAnnouncer.requestBuilder(URI.create(MANIFEST_ENDPOINT)).GET();
+
+        // Only send validators when we have something to fall back on
+        // https://developer.mozilla.org/en-US/docs/Web/HTTP/Conditional_requests
+        if (this.current != null || Files.exists(this.manifestFile)) {
+            if (this.etag != null) {
+                builder.header("If-None-Match", this.etag);
+            }
+            if (this.lastModified != null) {
+                builder.header("If-Modified-Since", this.lastModified);
+            }
+        }
+
+        final PipelineEvents.ManifestFetch event = new PipelineEvents.ManifestFetch();
+        event.begin();
+        // the body is parsed as it arrives, so the request completes once headers are received
+        return this.requests.track(this.client.sendAsync(builder.build(), MANIFEST_BODY), cycle).whenComplete((response, $) -> {
+            event.end();
+            if (event.shouldCommit()) {
+                event.cycle = cycle;
+                if (response != null) {
+                    event.status = response.statusCode();
+                    event.notModified = response.statusCode() == 304;
+                    event.bytes = response.headers().firstValueAsLong("Content-Length").orElse(0);
+                }
+                event.commit();
+            }
+        }).thenApplyAsync(response -> {
+            this.lastResponse = ResponseInfo.of(response);
+            try {
+                return this.handle(response, cycle);
+            } catch (final IOException | JsonSyntaxException ex) {
+                throw new CompletionException(ex);
+            } finally {
+                closeBody(response);
+            }
+        }, this.executor);
+    }
+
+    private ManifestState handle(final HttpResponse<@Nullable InputStream> response, final long cycle) throws IOException {
+        if (response.statusCode() == 304) {
+            this.notModifiedResponses.increment();
+            final @Nullable ManifestState existing = this.current;
+            if (existing != null) {
+                Logger.debug("Version manifest not modified, reusing existing state");
+                return existing;
+            }
+
+            // not yet loaded, but our copy on disk is still valid
+            return this.current = this.readStored(cycle);
+        } else if (response.statusCode() != 200 || response.body() == null) {
+            throw new IOException("Unexpected response status " + response.statusCode() + " while fetching version manifest");
+        }
+
+        this.modifiedResponses.increment();
+        final @Nullable String etag = response.headers().firstValue("ETag").orElse(null);
+        final @Nullable String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+
+        // the body is copied to disk as it is parsed, and only moved into place once complete
+        FileUtils.createDirectoriesSymlinkSafe(this.cacheLocation);
+        final Path temporary = Files.createTempFile(this.cacheLocation, "manifest", ".tmp");
+        try {
+            final Parsed parsed;
+            try (final OutputStream copy = Files.newOutputStream(temporary)) {
+                parsed = parse(response.body(), copy, cycle);
+            }
+            this.bytesReceived.add(parsed.bytes());
+
+            final @Nullable ManifestState existing = this.current;
+            if (existing != null && existing.hasManifestHash(parsed.sha1())) {
+                // validators changed, but the content did not
+                Logger.debug("Version manifest body unchanged, reusing existing state");
+                this.updateValidators(etag, lastModified);
+                return existing;
+            }
+
+            final ManifestState state = this.createState(parsed, etag);
+            // the manifest must be in place before validators referring to it
+            AtomicFiles.move(temporary, this.manifestFile);
+            this.updateValidators(etag, lastModified);
+            return this.current = state;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private ManifestState readStored(final long cycle) throws IOException {
+        try (final InputStream stored = Files.newInputStream(this.manifestFile)) {
+            return this.createState(parse(stored, OutputStream.nullOutputStream(), cycle), this.etag);
+        }
+    }
+
+    private static void closeBody(final HttpResponse<@Nullable InputStream> response) {
+        if (response.body() != null) {
+            try {
+                // abandons the rest of the body, if parsing failed part way through
+                response.body().close();
+            } catch (final IOException ex) {
+                Logger.debug(ex, "Failed to close version manifest response body");
+            }
+        }
+    }
+
+    private void updateValidators(final @Nullable String etag, final @Nullable String lastModified) throws IOException {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        writeValidator(this.etagFile, etag);
+        writeValidator(this.lastModifiedFile, lastModified);
+    }
+
+    /**
+     * A manifest parsed from a stream.
+     *
+     * @param index the parsed manifest
+     * @param sha1 the raw SHA-1 hash of the manifest body
+     * @param bytes the size of the manifest body
+     */
+    private record Parsed(ManifestIndex index, byte[] sha1, long bytes) {
+    }
+
+    /**
+     * Parse a manifest while it is read, hashing and copying the raw body on the way.
+     */
+    private static Parsed parse(final InputStream manifest, final OutputStream copy, final long cycle) throws IOException {
+        final PipelineEvents.ManifestParse event = new PipelineEvents.ManifestParse();
+        event.begin();
+        final MessageDigest digest = Hashes.sha1();
+        final CountingInputStream body = new CountingInputStream(new DigestInputStream(manifest, digest), copy);
+        final ManifestIndex index;
+        try (final JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            index = ManifestIndex.read(reader);
+            // the reader stops at the end of the document, which may leave a few bytes unread
+            body.transferTo(OutputStream.nullOutputStream());
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.cycle = cycle;
+            event.bytes = body.count();
+            event.versions = index.size();
+            event.commit();
+        }
+        return new Parsed(index, digest.digest(), body.count());
+    }
+
+    private ManifestState createState(final Parsed parsed, final @Nullable String etag) {
+        if (this.history != null) {
+            try {
+                this.history.record(parsed.index(), parsed.sha1(), Instant.now());
+            } catch (final IOException ex) {
+                // the history is only a record, and must not hold up announcements
+                Logger.warn(ex, "Failed to record version manifest in history");
+            }
+        }
+        return new ManifestState(parsed.index(), parsed.sha1(), etag, this.descriptors, this.comparisons, this.jars);
+    }
+
+    /**
+     * Copies everything read through it to another stream, counting the bytes.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final OutputStream copy;
+        private long count;
+
+        CountingInputStream(final InputStream in, final OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = super.read();
+            if (read != -1) {
+                this.copy.write(read);
+                this.count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                this.copy.write(buffer, offset, read);
+                this.count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            // skipped bytes would otherwise be missing from the copy
+            return Math.max(0, this.read(new byte[(int) Math.min(n, 8192)]));
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        long count() {
+            return this.count;
+        }
+    }
+
+    private static @Nullable String readValidator(final Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        final String value = Files.readString(file, StandardCharsets.UTF_8).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static void writeValidator(final Path file, final @Nullable String value) throws IOException {
+        if (value == null) {
+            Files.deleteIfExists(file);
+        } else {
+            AtomicFiles.write(file, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Get the most recently fetched manifest.
+     *
+     * <p>This may be newer than the state a poll cycle has finished comparing against.</p>
+     *
+     * @return the latest manifest state, or {@code null} if none has been loaded
+     */
+    @Nullable ManifestState current() {
+        return this.current;
+    }
+
+    /**
+     * Get caching information from the response to the most recent fetch.
+     *
+     * @return the response information, or {@code null} if the last fetch did not receive a response
+     */
+    public @Nullable ResponseInfo lastResponse() {
+        return this.lastResponse;
+    }
+
+    /**
+     * Get the number of fetches answered with {@code 304 Not Modified}.
+     *
+     * @return the not-modified count
+     */
+    public long notModifiedResponses() {
+        return this.notModifiedResponses.sum();
+    }
+
+    /**
+     * Get the number of fetches that returned a full manifest.
+     *
+     * @return the modified count
+     */
+    public long modifiedResponses() {
+        return this.modifiedResponses.sum();
+    }
+
+    /**
+     * Get the total number of manifest body bytes received.
+     *
+     * @return the byte count
+     */
+    public long bytesReceived() {
+        return this.bytesReceived.sum();
+    }
+
+    /**
+     * Server-provided hints about when the manifest should next be requested.
+     *
+     * @param statusCode the response status
+     * @param freshness how much longer the response may be cached for, if known
+     * @param retryAfter how long the server asked us to wait, if at all
+     */
+    record ResponseInfo(int statusCode, @Nullable Duration freshness, @Nullable Duration retryAfter) {
+        private static final Pattern MAX_AGE = Pattern.compile("(?:^|[,\\s])max-age=\"?(\\d+)\"?");
+
+        static ResponseInfo of(final HttpResponse<?> response) {
+            final HttpHeaders headers = response.headers();
+
+            @Nullable Duration freshness = null;
+            final @Nullable String cacheControl = headers.firstValue("Cache-Control").orElse(null);
+            if (cacheControl != null) {
+                final Matcher maxAge = MAX_AGE.matcher(cacheControl);
+                if (maxAge.find()) {
+                    final long age = headers.firstValueAsLong("Age").orElse(0);
+                    freshness = Duration.ofSeconds(Math.max(0, Long.parseLong(maxAge.group(1)) - age));
+                }
+            }
+
+            @Nullable Duration retryAfter = null;
+            final @Nullable String retryAfterHeader = headers.firstValue("Retry-After").orElse(null);
+            if (retryAfterHeader != null) {
+                retryAfter = parseRetryAfter(retryAfterHeader.trim());
+            }
+
+            return new ResponseInfo(response.statusCode(), freshness, retryAfter);
+        }
+
+        private static @Nullable Duration parseRetryAfter(final String value) {
+            // either delay-seconds or an HTTP-date
+            try {
+                return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+            } catch (final NumberFormatException ignored) {
+                // try as a date
+            }
+
+            try {
+                final Duration until = Duration.between(Instant.now(), ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME));
+                return until.isNegative() ? Duration.ZERO : until;
+            } catch (final DateTimeParseException ex) {
+                Logger.debug("Ignoring unparseable Retry-After header {}", value);
+                return null;
+            }
+        }
+
+        boolean isServerError() {
+            return this.statusCode == 429 || this.statusCode >= 500;
+        }
+    }
+
+}
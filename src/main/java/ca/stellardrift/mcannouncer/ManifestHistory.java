@@ -0,0 +1,588 @@
+package ca.stellardrift.mcannouncer;
+
+import ca.stellardrift.mcannouncer.util.Hashes;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.tinylog.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of every distinct version manifest seen.
+ *
+ * <p>Each snapshot is stored as a delta against the one before it, listing
+ * only the versions that were added, removed or changed. A separate index of
+ * fixed-size entries holds the time and log offset of each snapshot, so the
+ * changes between any two points in time are found by reading only the
+ * deltas between them.</p>
+ *
+ * <p>The log is the source of truth. A record torn by a crash is discarded
+ * when the log is next opened for writing, and index entries are rebuilt
+ * from the log when they are missing.</p>
+ */
+final class ManifestHistory implements AutoCloseable {
+    private static final int MAGIC = 0x4D434D48; // MCMH
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8; // magic, version
+
+    // record: body length, crc32 of body, body
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    // index entry: recorded time in epoch millis, log offset
+    private static final int INDEX_ENTRY_SIZE = 16;
+
+    private static final int SHA1_LENGTH = 20;
+    private static final int HAS_BEFORE = 1;
+    private static final int HAS_AFTER = 2;
+
+    static final String LOG_FILE = "history.log";
+    static final String INDEX_FILE = "history.idx";
+
+    /**
+     * A version as listed in a manifest.
+     *
+     * @param sha1 the hex-encoded hash of the version's descriptor
+     * @param type the version type, such as {@code release}
+     * @param url the location of the version's descriptor
+     * @param time when the version was last updated
+     */
+    record Version(String sha1, String type, String url, Instant time) {
+    }
+
+    /**
+     * A change to one version between two snapshots.
+     *
+     * @param id the version id
+     * @param before the hash of the version's descriptor before the change, or {@code null} if it was added
+     * @param after the version after the change, or {@code null} if it was removed
+     */
+    record Change(String id, @Nullable String before, @Nullable Version after) {
+    }
+
+    /**
+     * A summary of one snapshot.
+     *
+     * @param recorded when the snapshot was recorded
+     * @param manifestSha1 the hex-encoded hash of the manifest body
+     * @param latestRelease the latest release listed
+     * @param latestSnapshot the latest snapshot listed
+     * @param changes the number of versions changed since the previous snapshot
+     */
+    record Snapshot(Instant recorded, String manifestSha1, @Nullable String latestRelease, @Nullable String latestSnapshot, int changes) {
+    }
+
+    private record Record(Snapshot snapshot, List<Change> changes) {
+    }
+
+    private final FileChannel log;
+    private final @Nullable FileChannel index; // null when read-only
+    private long[] times = new long[64]; // guarded by this
+    private long[] offsets = new long[64]; // guarded by this
+    private int size; // guarded by this
+    private long logEnd; // guarded by this
+    private byte @Nullable [] lastManifestSha1; // guarded by this
+    private @Nullable Map<String, Version> head; // replayed on first write, guarded by this
+
+    private ManifestHistory(final FileChannel log, final @Nullable FileChannel index) {
+        this.log = log;
+        this.index = index;
+    }
+
+    /**
+     * Open the history in a cache directory, creating it if necessary.
+     *
+     * @param cacheDir the cache directory
+     * @return the opened history
+     * @throws IOException if the history could not be opened
+     */
+    static ManifestHistory open(final Path cacheDir) throws IOException {
+        Files.createDirectories(cacheDir);
+        final FileChannel log = FileChannel.open(cacheDir.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final FileChannel index;
+        try {
+            index = FileChannel.open(cacheDir.resolve(INDEX_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (final IOException ex) {
+            log.close();
+            throw ex;
+        }
+        return load(new ManifestHistory(log, index), cacheDir.resolve(INDEX_FILE));
+    }
+
+    /**
+     * Open an existing history without modifying it, such as while it is in use by a running announcer.
+     *
+     * <p>Only snapshots that were completely written when it was opened are visible.</p>
+     *
+     * @param cacheDir the cache directory
+     * @return the opened history
+     * @throws IOException if the history could not be opened
+     */
+    static ManifestHistory openReadOnly(final Path cacheDir) throws IOException {
+        final FileChannel log = FileChannel.open(cacheDir.resolve(LOG_FILE), StandardOpenOption.READ);
+        final ManifestHistory history = new ManifestHistory(log, null);
+        final Path index = cacheDir.resolve(INDEX_FILE);
+        if (Files.exists(index)) {
+            try (final FileChannel indexChannel = FileChannel.open(index, StandardOpenOption.READ)) {
+                history.readIndex(indexChannel);
+            } catch (final IOException ex) {
+                log.close();
+                throw ex;
+            }
+        }
+        return load(history, null);
+    }
+
+    private static ManifestHistory load(final ManifestHistory history, final @Nullable Path indexFile) throws IOException {
+        try {
+            synchronized (history) {
+                if (history.index != null) {
+                    history.readIndex(history.index);
+                }
+                history.scan(indexFile);
+            }
+        } catch (final IOException ex) {
+            history.close();
+            throw ex;
+        }
+        return history;
+    }
+
+    private void readIndex(final FileChannel channel) throws IOException {
+        this.size = 0;
+        final long length = channel.size();
+        if (length < HEADER_SIZE) {
+            return;
+        }
+        final ByteBuffer contents = ByteBuffer.allocate((int) Math.min(length, Integer.MAX_VALUE));
+        readFully(channel, contents, 0);
+        contents.flip();
+        if (contents.getInt(0) != MAGIC || contents.getInt(4) != FORMAT_VERSION) {
+            Logger.warn("Manifest history index is not in a supported format, rebuilding it");
+            return;
+        }
+        final int entries = (contents.limit() - HEADER_SIZE) / INDEX_ENTRY_SIZE;
+        for (int i = 0; i < entries; i++) {
+            final int base = HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+            this.add(contents.getLong(base), contents.getLong(base + 8));
+        }
+    }
+
+    /**
+     * Check indexed records against the log, and index any records written after the index was last updated.
+     */
+    private void scan(final @Nullable Path indexFile) throws IOException {
+        final long logSize = this.log.size();
+        if (logSize < HEADER_SIZE) {
+            if (this.index == null) {
+                throw new IOException("Manifest history log is empty");
+            }
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).flip();
+            this.log.truncate(0);
+            writeFully(this.log, header, 0);
+            this.size = 0;
+        } else {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(this.log, header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Manifest history log is not in a supported format");
+            }
+        }
+
+        // drop index entries that do not point at complete records
+        long position = HEADER_SIZE;
+        int valid = 0;
+        while (valid < this.size && this.offsets[valid] == position) {
+            final long end = this.recordEnd(position, logSize);
+            if (end == -1) {
+                break;
+            }
+            position = end;
+            valid++;
+        }
+        final boolean indexChanged = valid != this.size;
+        this.size = valid;
+
+        // then index any records that follow
+        final int indexed = this.size;
+        while (position < logSize) {
+            final long end = this.recordEnd(position, logSize);
+            if (end == -1) {
+                break;
+            }
+            final ByteBuffer time = ByteBuffer.allocate(8);
+            readFully(this.log, time, position + RECORD_HEADER_SIZE);
+            this.add(time.getLong(0), position);
+            position = end;
+        }
+        this.logEnd = position;
+
+        if (this.index != null) {
+            if (position < logSize) {
+                Logger.warn("Manifest history log has {} bytes of incomplete data, discarding it", logSize - position);
+                this.log.truncate(position);
+            }
+            if (indexChanged || this.size != indexed) {
+                Logger.info("Rebuilding manifest history index at {}", indexFile);
+                this.writeIndex(0);
+            }
+        }
+        if (this.size > 0) {
+            this.lastManifestSha1 = Hashes.fromHex(this.readRecord(this.size - 1).snapshot().manifestSha1());
+        }
+    }
+
+    /**
+     * Find the end of a record, verifying its checksum.
+     *
+     * @return the offset following the record, or {@code -1} if it is incomplete or corrupt
+     */
+    private long recordEnd(final long offset, final long logSize) throws IOException {
+        if (offset + RECORD_HEADER_SIZE > logSize) {
+            return -1;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        readFully(this.log, header, offset);
+        final int length = header.getInt(0);
+        if (length < 8 || length > MAX_RECORD_SIZE || offset + RECORD_HEADER_SIZE + length > logSize) {
+            return -1;
+        }
+        final ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(this.log, body, offset + RECORD_HEADER_SIZE);
+        final CRC32 crc = new CRC32();
+        crc.update(body.flip());
+        return (int) crc.getValue() == header.getInt(4) ? offset + RECORD_HEADER_SIZE + length : -1;
+    }
+
+    private void add(final long time, final long offset) {
+        if (this.size == this.times.length) {
+            this.times = Arrays.copyOf(this.times, this.size * 2);
+            this.offsets = Arrays.copyOf(this.offsets, this.size * 2);
+        }
+        this.times[this.size] = time;
+        this.offsets[this.size] = offset;
+        this.size++;
+    }
+
+    private void writeIndex(final int from) throws IOException {
+        final FileChannel index = this.index;
+        if (index == null) {
+            return;
+        }
+        if (from == 0) {
+            index.truncate(0);
+            writeFully(index, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(FORMAT_VERSION).flip(), 0);
+        }
+        final ByteBuffer entries = ByteBuffer.allocate((this.size - from) * INDEX_ENTRY_SIZE);
+        for (int i = from; i < this.size; i++) {
+            entries.putLong(this.times[i]).putLong(this.offsets[i]);
+        }
+        writeFully(index, entries.flip(), HEADER_SIZE + (long) from * INDEX_ENTRY_SIZE);
+        index.force(false);
+    }
+
+    /**
+     * Record a manifest, if it differs from the last one recorded.
+     *
+     * @param manifest the manifest's index
+     * @param manifestSha1 the raw hash of the manifest body
+     * @param recorded when the manifest was fetched
+     * @return whether a new snapshot was recorded
+     * @throws IOException if the snapshot could not be written
+     */
+    synchronized boolean record(final ManifestIndex manifest, final byte[] manifestSha1, final Instant recorded) throws IOException {
+        if (this.index == null) {
+            throw new IllegalStateException("Manifest history is read-only");
+        }
+        if (Arrays.equals(this.lastManifestSha1, manifestSha1)) {
+            return false;
+        }
+
+        final Map<String, Version> head = this.head();
+        final List<Change> changes = new ArrayList<>();
+        for (int i = 0; i < manifest.size(); i++) {
+            final String id = manifest.id(i);
+            final Version version = new Version(manifest.sha1(i), manifest.type(i), manifest.url(i), manifest.time(i).truncatedTo(ChronoUnit.MILLIS));
+            final @Nullable Version previous = head.get(id);
+            if (!version.equals(previous)) {
+                changes.add(new Change(id, previous == null ? null : previous.sha1(), version));
+            }
+        }
+        for (final Map.Entry<String, Version> version : head.entrySet()) {
+            if (manifest.indexOf(version.getKey()) == -1) {
+                changes.add(new Change(version.getKey(), version.getValue().sha1(), null));
+            }
+        }
+
+        // keep times in order, even if the clock moves backwards
+        final long time = Math.max(recorded.toEpochMilli(), this.size == 0 ? Long.MIN_VALUE : this.times[this.size - 1]);
+        final byte[] body = encode(time, manifestSha1, manifest.latestRelease(), manifest.latestSnapshot(), changes);
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length)
+            .putInt(body.length)
+            .putInt((int) crc.getValue())
+            .put(body)
+            .flip();
+        final long offset = this.logEnd;
+        writeFully(this.log, record, offset);
+        // the record must be durable before the index refers to it
+        this.log.force(false);
+        this.logEnd = offset + record.limit();
+        this.add(time, offset);
+        this.writeIndex(this.size - 1);
+
+        for (final Change change : changes) {
+            if (change.after() == null) {
+                head.remove(change.id());
+            } else {
+                head.put(change.id(), change.after());
+            }
+        }
+        this.lastManifestSha1 = manifestSha1.clone();
+        return true;
+    }
+
+    private Map<String, Version> head() throws IOException {
+        if (this.head == null) {
+            final Map<String, Version> head = new HashMap<>();
+            for (final Change change : this.changes(-1, this.size - 1)) {
+                if (change.after() != null) {
+                    head.put(change.id(), change.after());
+                }
+            }
+            this.head = head;
+        }
+        return this.head;
+    }
+
+    private static byte[] encode(
+        final long time,
+        final byte[] manifestSha1,
+        final @Nullable String latestRelease,
+        final @Nullable String latestSnapshot,
+        final List<Change> changes
+    ) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + changes.size() * 160);
+        try (final DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(time);
+            out.write(manifestSha1);
+            writeNullable(out, latestRelease);
+            writeNullable(out, latestSnapshot);
+            out.writeInt(changes.size());
+            for (final Change change : changes) {
+                out.writeUTF(change.id());
+                out.writeByte((change.before() == null ? 0 : HAS_BEFORE) | (change.after() == null ? 0 : HAS_AFTER));
+                if (change.before() != null) {
+                    out.write(Hashes.fromHex(change.before()));
+                }
+                final @Nullable Version after = change.after();
+                if (after != null) {
+                    out.write(Hashes.fromHex(after.sha1()));
+                    out.writeUTF(after.type());
+                    out.writeUTF(after.url());
+                    out.writeLong(after.time().toEpochMilli());
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeNullable(final DataOutputStream out, final @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static Record decode(final ByteBuffer body) {
+        final Instant recorded = Instant.ofEpochMilli(body.getLong());
+        final String manifestSha1 = readHash(body);
+        final @Nullable String latestRelease = readNullable(body);
+        final @Nullable String latestSnapshot = readNullable(body);
+        final int count = body.getInt();
+        final List<Change> changes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final String id = readString(body);
+            final int flags = body.get();
+            final @Nullable String before = (flags & HAS_BEFORE) != 0 ? readHash(body) : null;
+            final @Nullable Version after = (flags & HAS_AFTER) != 0
+                ? new Version(readHash(body), readString(body), readString(body), Instant.ofEpochMilli(body.getLong()))
+                : null;
+            changes.add(new Change(id, before, after));
+        }
+        return new Record(new Snapshot(recorded, manifestSha1, latestRelease, latestSnapshot, count), changes);
+    }
+
+    private static String readHash(final ByteBuffer body) {
+        final byte[] hash = new byte[SHA1_LENGTH];
+        body.get(hash);
+        return Hashes.toHex(hash);
+    }
+
+    private static @Nullable String readNullable(final ByteBuffer body) {
+        return body.get() != 0 ? readString(body) : null;
+    }
+
+    private static String readString(final ByteBuffer body) { // as written by DataOutput.writeUTF
+        final int length = body.getShort() & 0xffff;
+        final byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the number of snapshots recorded.
+     *
+     * @return the snapshot count
+     */
+    synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * Get when a snapshot was recorded.
+     *
+     * @param snapshot the snapshot number, starting from zero
+     * @return the time it was recorded
+     */
+    synchronized Instant time(final int snapshot) {
+        return Instant.ofEpochMilli(this.times[snapshot]);
+    }
+
+    /**
+     * Find the snapshot that was current at a point in time.
+     *
+     * @param time the point in time
+     * @return the last snapshot recorded at or before that time, or {@code -1} if there was none
+     */
+    synchronized int snapshotAt(final Instant time) {
+        final long millis = time.toEpochMilli();
+        int low = 0;
+        int high = this.size - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (this.times[middle] <= millis) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Read a summary of a snapshot.
+     *
+     * @param snapshot the snapshot number
+     * @return the snapshot
+     * @throws IOException if the snapshot could not be read
+     */
+    synchronized Snapshot snapshot(final int snapshot) throws IOException {
+        return this.readRecord(snapshot).snapshot();
+    }
+
+    private Record readRecord(final int snapshot) throws IOException {
+        final long start = this.offsets[snapshot];
+        final long end = snapshot + 1 < this.size ? this.offsets[snapshot + 1] : this.logEnd;
+        final ByteBuffer record = ByteBuffer.allocate((int) (end - start));
+        readFully(this.log, record, start);
+        return decode(record.position(RECORD_HEADER_SIZE));
+    }
+
+    /**
+     * Get the net changes between two snapshots.
+     *
+     * <p>Only the deltas recorded after {@code from}, up to and including
+     * {@code to}, are read. Versions whose descriptor is the same at both
+     * ends, such as one added and then removed again, are not listed.</p>
+     *
+     * @param from the earlier snapshot, or {@code -1} for the start of the history
+     * @param to the later snapshot
+     * @return the changes, by version id
+     * @throws IOException if the history could not be read
+     */
+    synchronized List<Change> changes(final int from, final int to) throws IOException {
+        if (from < -1 || to >= this.size || from > to) {
+            throw new IndexOutOfBoundsException("Invalid snapshot range " + from + " to " + to + " of " + this.size);
+        }
+        if (from == to) {
+            return List.of();
+        }
+
+        final long start = this.offsets[from + 1];
+        final long end = to + 1 < this.size ? this.offsets[to + 1] : this.logEnd;
+        final ByteBuffer deltas = ByteBuffer.allocate((int) (end - start));
+        readFully(this.log, deltas, start);
+        deltas.flip();
+
+        final Map<String, Change> net = new TreeMap<>();
+        while (deltas.hasRemaining()) {
+            final int length = deltas.getInt();
+            deltas.getInt(); // checksum, verified on open
+            final int next = deltas.position() + length;
+            for (final Change change : decode(deltas.slice(deltas.position(), length)).changes()) {
+                final @Nullable Change earlier = net.get(change.id());
+                net.put(change.id(), earlier == null ? change : new Change(change.id(), earlier.before(), change.after()));
+            }
+            deltas.position(next);
+        }
+
+        final List<Change> result = new ArrayList<>(net.size());
+        for (final Change change : net.values()) {
+            final boolean unchanged = change.after() == null
+                ? change.before() == null
+                : change.after().sha1().equals(change.before());
+            if (!unchanged) {
+                result.add(change);
+            }
+        }
+        return result;
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException("Unexpected end of manifest history at " + offset);
+            }
+            offset += read;
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            this.log.close();
+        } finally {
+            if (this.index != null) {
+                this.index.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,309 @@
+package ca.stellardrift.mcannouncer;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+
+/**
+ * A compact index of the versions listed in a version manifest.
+ *
+ * <p>Only the fields needed to locate and compare version descriptors are
+ * retained, stored as parallel arrays sorted by version id. This allows two
+ * indexes to be compared with a single merge pass.</p>
+ */
+final class ManifestIndex {
+    private final String[] ids;
+    private final String[] sha1s;
+    private final String[] types;
+    private final String[] urls;
+    private final long[] times; // epoch millis
+    private final int[] manifestOrder; // positions, newest first
+    private final @Nullable String latestRelease;
+    private final @Nullable String latestSnapshot;
+
+    private ManifestIndex(
+        final String[] ids,
+        final String[] sha1s,
+        final String[] types,
+        final String[] urls,
+        final long[] times,
+        final int[] manifestOrder,
+        final @Nullable String latestRelease,
+        final @Nullable String latestSnapshot
+    ) {
+        this.ids = ids;
+        this.sha1s = sha1s;
+        this.types = types;
+        this.urls = urls;
+        this.times = times;
+        this.manifestOrder = manifestOrder;
+        this.latestRelease = latestRelease;
+        this.latestSnapshot = latestSnapshot;
+    }
+
+    /**
+     * Receives the differences between two indexes.
+     */
+    interface DiffVisitor {
+        void removed(int ours);
+
+        void added(int theirs);
+
+        void changed(int ours, int theirs);
+    }
+
+    /**
+     * Compute the differences between two indexes in a single pass.
+     *
+     * <p>Entries are visited in order of their version id.</p>
+     *
+     * @param ours the older index
+     * @param theirs the newer index
+     * @param visitor the visitor to receive positions of changed entries
+     */
+    static void diff(final ManifestIndex ours, final ManifestIndex theirs, final DiffVisitor visitor) {
+        final int ourSize = ours.ids.length;
+        final int theirSize = theirs.ids.length;
+        int i = 0;
+        int j = 0;
+        while (i < ourSize || j < theirSize) {
+            final int cmp;
+            if (i == ourSize) {
+                cmp = 1;
+            } else if (j == theirSize) {
+                cmp = -1;
+            } else {
+                final String ourId = ours.ids[i];
+                final String theirId = theirs.ids[j];
+                cmp = ourId == theirId ? 0 : ourId.compareTo(theirId);
+            }
+
+            if (cmp < 0) {
+                visitor.removed(i++);
+            } else if (cmp > 0) {
+                visitor.added(j++);
+            } else {
+                if (!ours.sha1s[i].equals(theirs.sha1s[j])) {
+                    visitor.changed(i, j);
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+
+    /**
+     * Read a {@code version_manifest_v2.json} document.
+     *
+     * @param reader a reader positioned at the start of the manifest
+     * @return a new index
+     * @throws IOException if the manifest could not be read
+     */
+    static ManifestIndex read(final JsonReader reader) throws IOException {
+        final Builder builder = new Builder();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "latest" -> {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "release" -> builder.latestRelease = reader.nextString();
+                            case "snapshot" -> builder.latestSnapshot = reader.nextString();
+                            default -> reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                case "versions" -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readVersion(reader, builder);
+                    }
+                    reader.endArray();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (reader.peek() != JsonToken.END_DOCUMENT) {
+            throw new JsonSyntaxException("Trailing data after version manifest at " + reader.getPath());
+        }
+        return builder.build();
+    }
+
+    private static void readVersion(final JsonReader reader, final Builder builder) throws IOException {
+        String id = null;
+        String sha1 = null;
+        String type = null;
+        String url = null;
+        String time = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id" -> id = reader.nextString().intern();
+                case "sha1" -> sha1 = reader.nextString();
+                case "type" -> type = reader.nextString().intern();
+                case "url" -> url = reader.nextString();
+                case "time" -> time = reader.nextString();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (id == null || sha1 == null || type == null || url == null || time == null) {
+            throw new JsonSyntaxException("Incomplete version entry before " + reader.getPath());
+        }
+        builder.add(id, sha1, type, url, OffsetDateTime.parse(time).toInstant().toEpochMilli());
+    }
+
+    int size() {
+        return this.ids.length;
+    }
+
+    /**
+     * Find the position of a version in this index.
+     *
+     * @param id the version id
+     * @return the position, or {@code -1} if not present
+     */
+    int indexOf(final String id) {
+        final int position = Arrays.binarySearch(this.ids, id);
+        return position < 0 ? -1 : position;
+    }
+
+    /**
+     * Get the position of the newest version in the manifest.
+     *
+     * @return the position, or {@code -1} if the manifest is empty
+     */
+    int latest() {
+        return this.manifestOrder.length == 0 ? -1 : this.manifestOrder[0];
+    }
+
+    /**
+     * Get the position of the entry at a certain point in the manifest's own ordering.
+     *
+     * @param manifestPosition the index in the manifest's version list, newest first
+     * @return the position in this index
+     */
+    int inManifestOrder(final int manifestPosition) {
+        return this.manifestOrder[manifestPosition];
+    }
+
+    String id(final int index) {
+        return this.ids[index];
+    }
+
+    String sha1(final int index) {
+        return this.sha1s[index];
+    }
+
+    String type(final int index) {
+        return this.types[index];
+    }
+
+    String url(final int index) {
+        return this.urls[index];
+    }
+
+    Instant time(final int index) {
+        return Instant.ofEpochMilli(this.times[index]);
+    }
+
+    /**
+     * Get how urgently the descriptor for an entry is needed when loading many at once.
+     *
+     * @param index the position of the entry
+     * @return the entry's priority
+     */
+    FetchScheduler.Priority priority(final int index) {
+        final String id = this.ids[index];
+        final int tier;
+        if (id.equals(this.latestRelease) || id.equals(this.latestSnapshot)) {
+            tier = FetchScheduler.Priority.LATEST;
+        } else if ("release".equals(this.types[index])) {
+            tier = FetchScheduler.Priority.RELEASE;
+        } else {
+            tier = FetchScheduler.Priority.OTHER;
+        }
+        return new FetchScheduler.Priority(tier, this.times[index]);
+    }
+
+    @Nullable String latestRelease() {
+        return this.latestRelease;
+    }
+
+    @Nullable String latestSnapshot() {
+        return this.latestSnapshot;
+    }
+
+    static final class Builder {
+        private String[] ids = new String[1024];
+        private String[] sha1s = new String[1024];
+        private String[] types = new String[1024];
+        private String[] urls = new String[1024];
+        private long[] times = new long[1024];
+        private int size;
+        @Nullable String latestRelease;
+        @Nullable String latestSnapshot;
+
+        void add(final String id, final String sha1, final String type, final String url, final long time) {
+            if (this.size == this.ids.length) {
+                final int newLength = this.size << 1;
+                this.ids = Arrays.copyOf(this.ids, newLength);
+                this.sha1s = Arrays.copyOf(this.sha1s, newLength);
+                this.types = Arrays.copyOf(this.types, newLength);
+                this.urls = Arrays.copyOf(this.urls, newLength);
+                this.times = Arrays.copyOf(this.times, newLength);
+            }
+            this.ids[this.size] = id;
+            this.sha1s[this.size] = sha1;
+            this.types[this.size] = type;
+            this.urls[this.size] = url;
+            this.times[this.size] = time;
+            this.size++;
+        }
+
+        ManifestIndex build() {
+            // sort ids, dropping any duplicates
+            final String[] sorted = Arrays.copyOf(this.ids, this.size);
+            Arrays.sort(sorted);
+            int unique = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (unique == 0 || !sorted[unique - 1].equals(sorted[i])) {
+                    sorted[unique++] = sorted[i];
+                }
+            }
+
+            final String[] ids = Arrays.copyOf(sorted, unique);
+            final String[] sha1s = new String[unique];
+            final String[] types = new String[unique];
+            final String[] urls = new String[unique];
+            final long[] times = new long[unique];
+            final int[] order = new int[unique];
+            int ordered = 0;
+            for (int i = 0; i < this.size; i++) {
+                final int position = Arrays.binarySearch(ids, this.ids[i]);
+                if (sha1s[position] != null) {
+                    continue; // duplicate, the first (newest) entry wins
+                }
+                sha1s[position] = this.sha1s[i];
+                types[position] = this.types[i];
+                urls[position] = this.urls[i];
+                times[position] = this.times[i];
+                order[ordered++] = position;
+            }
+
+            return new ManifestIndex(ids, sha1s, types, urls, times, order, this.latestRelease, this.latestSnapshot);
+        }
+    }
+
+}
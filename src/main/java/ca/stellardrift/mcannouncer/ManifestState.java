@@ -1,138 +1,82 @@
 package ca.stellardrift.mcannouncer;
 
-import com.google.gson.JsonSyntaxException;
+import ca.stellardrift.mcannouncer.util.Hashes;
 import org.checkerframework.checker.nullness.qual.Nullable;
-import org.spongepowered.gradle.vanilla.internal.model.Download;
-import org.spongepowered.gradle.vanilla.internal.model.DownloadClassifier;
-import org.spongepowered.gradle.vanilla.internal.model.JavaRuntimeVersion;
-import org.spongepowered.gradle.vanilla.internal.model.Library;
-import org.spongepowered.gradle.vanilla.internal.model.VersionDescriptor;
-import org.spongepowered.gradle.vanilla.internal.model.VersionManifestV2;
-import org.spongepowered.gradle.vanilla.internal.util.FileUtils;
-import org.spongepowered.gradle.vanilla.internal.util.GsonUtils;
 import org.spongepowered.gradle.vanilla.internal.util.Pair;
 import org.spongepowered.gradle.vanilla.repository.ResolutionResult;
 import org.tinylog.Logger;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * Represents a single fetch of the manifest.
  */
 public class ManifestState {
-    private static final String MANIFEST_ENDPOINT = "https://piston-meta.mojang.com/mc/game/version_manifest_v2.json";
     private static final String UNKNOWN = "*(unknown)*";
     private static final String NONE = "*(none)*";
 
-    private final VersionManifestV2 manifest;
-    private final String manifestEtag;
-    private final Path cacheLocation;
-    private final Map<String, VersionDescriptor.Reference> references = new TreeMap<>();
-    private final Map<String, CompletableFuture<ResolutionResult<VersionDescriptor.Full>>> loadedDescriptors = new ConcurrentHashMap<>();
-    private final HttpClient client;
-
-    public static CompletableFuture<ManifestState> create(final HttpClient client, final Path cacheLocation, final boolean trustExisting) {
-        final URI requestUri = URI.create(MANIFEST_ENDPOINT);
-        final Path destination = cacheLocation.resolve("manifest.json");
-        final Path etagFile = cacheLocation.resolve("manifest.etag");
-
-        final HttpRequest.Builder builder = VersionAnnouncer.requestBuilder(requestUri).GET();
-
-        // if etag already exists, perform a HEAD request to compare the etag
-        // https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/ETag
-        if (Files.exists(etagFile)) {
-            final String etag;
-            try {
-                etag = Files.readString(etagFile, StandardCharsets.UTF_8);
-            } catch (final IOException ex) {
-                return CompletableFuture.failedFuture(ex);
-            }
-
-            if (Files.exists(destination) && trustExisting) {
-                // load and return stored
-                try (final var reader = Files.newBufferedReader(destination, StandardCharsets.UTF_8)) {
-                    return CompletableFuture.completedFuture(new ManifestState(GsonUtils.GSON.fromJson(reader, VersionManifestV2.class), etag, client, cacheLocation));
-                } catch (final IOException | JsonSyntaxException ex) {
-                    Logger.error(ex, "Failed to load existing version manifest from disk, re-downloading");
-                }
-            }
-
-            builder.header("If-None-Match", etag.trim());
-        }
-
-        try {
-            FileUtils.createDirectoriesSymlinkSafe(destination.getParent());
-        } catch (final IOException ex) {
-            return CompletableFuture.failedFuture(ex);
-        }
-
-        final CompletableFuture<? extends HttpResponse<?>> manifest = client.sendAsync(
-            VersionAnnouncer.get(requestUri),
-            info -> {
-                if (info.statusCode() == 304) {
-                    return HttpResponse.BodySubscribers.replacing(destination);
-                } else {
-                    return HttpResponse.BodySubscribers.ofFile(destination,
-                        StandardOpenOption.CREATE,
-                        StandardOpenOption.WRITE,
-                        StandardOpenOption.TRUNCATE_EXISTING
-                    );
-                }
-            }
-        );
-
-        return manifest.thenApply(response -> {
-            final Optional<String> etag = response.headers().firstValue("ETag");
-
-            // Cache etag
-            if (etag.isPresent()) {
-                try {
-                    Files.writeString(etagFile, etag.get());
-                } catch (final IOException ex) {
-                    throw new CompletionException(ex);
-                }
-            }
-
-            try (final var reader = Files.newBufferedReader(destination, StandardCharsets.UTF_8)) {
-                return new ManifestState(GsonUtils.GSON.fromJson(reader, VersionManifestV2.class), etag.orElse(null), client, cacheLocation);
-            } catch (final IOException | JsonSyntaxException ex) {
-                throw new CompletionException(ex);
-            }
-        });
+    private final ManifestIndex index;
+    private final byte[] manifestSha1;
+    private final @Nullable String manifestEtag;
+    private final DescriptorLoader descriptors;
+    private final ComparisonMemo comparisons;
+    private final @Nullable JarCache jars;
+
+    ManifestState(
+        final ManifestIndex index,
+        final byte[] manifestSha1,
+        final @Nullable String manifestEtag,
+        final DescriptorLoader descriptors,
+        final ComparisonMemo comparisons,
+        final @Nullable JarCache jars
+    ) {
+        this.index = index;
+        this.manifestSha1 = manifestSha1;
+        this.manifestEtag = manifestEtag;
+        this.descriptors = descriptors;
+        this.comparisons = comparisons;
+        this.jars = jars;
     }
 
-    private ManifestState(final VersionManifestV2 manifest, final String manifestEtag, final HttpClient client, final Path cacheLocation) {
-        this.manifest = manifest;
-        this.manifestEtag = manifestEtag;
-        this.client = client;
-        this.cacheLocation = cacheLocation;
+    /**
+     * Get whether this state was read from a manifest with the provided hash.
+     *
+     * @param sha1 the raw SHA-1 hash of a manifest body
+     * @return whether the manifest bodies are identical
+     */
+    boolean hasManifestHash(final byte[] sha1) {
+        return Arrays.equals(this.manifestSha1, sha1);
+    }
 
-        for (final VersionDescriptor.Reference ref : manifest.versions()) {
-            this.references.put(ref.id(), ref);
+    /**
+     * Get the hashes of every version descriptor listed in this manifest.
+     *
+     * @return hex-encoded SHA-1 hashes
+     */
+    Set<String> descriptorHashes() {
+        final Set<String> hashes = new HashSet<>(this.index.size() * 2);
+        for (int i = 0; i < this.index.size(); i++) {
+            hashes.add(this.index.sha1(i));
         }
+        return hashes;
     }
 
     /**
@@ -141,98 +85,113 @@ public class ManifestState {
      * <p>This is the real core of the logic.</p>
      *
      * @param that newer manifest state
+     * @param cycle the poll cycle this comparison is part of
      * @return a list of versions that have changed.
      */
-    public List<CompletableFuture<ComparisonReport>> compare(final ManifestState that) {
-        if (Objects.equals(this.manifestEtag, that.manifestEtag)) {
+    public List<CompletableFuture<ComparisonReport>> compare(final ManifestState that, final long cycle) {
+        if (this == that
+            || (this.manifestEtag != null && this.manifestEtag.equals(that.manifestEtag))
+            || that.hasManifestHash(this.manifestSha1)) {
             return List.of();
         }
 
-        // compute the our versions, their versions, and shared versions
-        final Map<String, VersionDescriptor.Reference> ourVersions = new HashMap<>(this.references);
-        final Map<String, VersionDescriptor.Reference> theirVersions = new HashMap<>(that.references);
-        final Set<String> sharedVersions = new HashSet<>();
-
-        // compute the difference
-        for (final var it = ourVersions.entrySet().iterator(); it.hasNext();) {
-            final var entry = it.next();
-            if (theirVersions.remove(entry.getKey()) != null) {
-                sharedVersions.add(entry.getKey());
-                it.remove();
-            }
-        }
-
+        final PipelineEvents.Compare event = new PipelineEvents.Compare();
+        event.begin();
         final List<CompletableFuture<ComparisonReport>> reports = new ArrayList<>();
+        final int ourLatest = this.index.latest();
+        ManifestIndex.diff(this.index, that.index, new ManifestIndex.DiffVisitor() {
+            private @Nullable CompletableFuture<ResolutionResult<CompactDescriptor>> ourLatestFull;
+
+            // find versions only in this (old): list removed
+            @Override
+            public void removed(final int ours) {
+                event.removed++;
+                reports.add(CompletableFuture.completedFuture(ComparisonReport.builder()
+                    .versionId(ManifestState.this.index.id(ours))
+                    .removedVersion()
+                    .time(ManifestState.this.index.time(ours))
+                    .build()));
+            }
 
-        // find versions only in this (old): list removed
-        // removed versions
-        for (final var entry : ourVersions.entrySet()) {
-            reports.add(CompletableFuture.completedFuture(ComparisonReport.builder()
-                .versionId(entry.getKey())
-                .removedVersion()
-                .time(entry.getValue().time().toInstant())
-                .build()));
-        }
-
-        // find versions only in that (new): compare against latest in ours
-        // added versions
-        if (!theirVersions.isEmpty()) {
-            final VersionDescriptor.Reference ourLatest = this.manifest.versions().get(0);
-            final CompletableFuture<ResolutionResult<VersionDescriptor.Full>> ourLatestFull = this.version(ourLatest.id());
-            for (final var entry : theirVersions.entrySet()) {
+            // find versions only in that (new): compare against latest in ours
+            @Override
+            public void added(final int theirs) {
+                event.added++;
+                final String addedId = that.index.id(theirs);
                 final var builder = ComparisonReport.builder()
-                    .versionId(entry.getKey())
-                    .time(entry.getValue().time().toInstant())
-                    .newVersion(ourLatest.id());
-                reports.add(ourLatestFull.thenCombine(that.version(entry.getKey()), (oldLatest, added) -> {
-                   this.populateComparison(oldLatest.get(), added.get(), builder, false);
-                   return builder.build();
-                }));
-            }
-        }
+                    .versionId(addedId)
+                    .time(that.index.time(theirs));
+                if (ourLatest == -1) { // nothing to compare against
+                    reports.add(CompletableFuture.completedFuture(builder.newVersion(NONE).build()));
+                    return;
+                }
 
-        // find any version that exists in both, and if different:
-        // generate an elementwise diff, into a discord embed
-        // changed versions
-        for (final String changedId : sharedVersions) {
-            final VersionDescriptor.Reference ours = this.references.get(changedId);
-            final VersionDescriptor.Reference theirs = that.references.get(changedId);
-            if (ours == null || theirs == null) {
-                Logger.warn("Encountered 'shared' version that was not actually shared: {}", changedId);
-                continue;
-            }
-            if (ours.sha1().equals(theirs.sha1())) { // no change
-                continue;
+                final String ourLatestId = ManifestState.this.index.id(ourLatest);
+                builder.newVersion(ourLatestId);
+                reports.add(ManifestState.this.compareDescriptors(
+                    builder,
+                    ManifestState.this.index.sha1(ourLatest),
+                    that.index.sha1(theirs),
+                    ManifestState.this.index.url(ourLatest),
+                    that.index.url(theirs),
+                    false,
+                    that.index.priority(theirs),
+                    () -> {
+                        if (this.ourLatestFull == null) {
+                            this.ourLatestFull = ManifestState.this.version(ourLatestId, cycle);
+                        }
+                        return this.ourLatestFull;
+                    },
+                    () -> that.version(addedId, cycle),
+                    cycle
+                ));
             }
 
-            final var builder = ComparisonReport.builder()
-                .versionId(changedId)
-                .modifiedVersion()
-                .time(theirs.time().toInstant())
-                .onlyWhenSectionsPresent(true);
-
-            reports.add(this.version(changedId).thenCombine(that.version(changedId), (original, changed) -> {
-                this.populateComparison(original.get(), changed.get(), builder, true);
-                return builder.build();
-            }));
-        }
+            // find any version that exists in both, and if different:
+            // generate an elementwise diff, into a discord embed
+            @Override
+            public void changed(final int ours, final int theirs) {
+                event.changed++;
+                final String changedId = that.index.id(theirs);
+                final var builder = ComparisonReport.builder()
+                    .versionId(changedId)
+                    .modifiedVersion()
+                    .time(that.index.time(theirs))
+                    .onlyWhenSectionsPresent(true);
+
+                reports.add(ManifestState.this.compareDescriptors(
+                    builder,
+                    ManifestState.this.index.sha1(ours),
+                    that.index.sha1(theirs),
+                    ManifestState.this.index.url(ours),
+                    that.index.url(theirs),
+                    true,
+                    that.index.priority(theirs),
+                    () -> ManifestState.this.version(changedId, cycle),
+                    () -> that.version(changedId, cycle),
+                    cycle
+                ));
+            }
+        });
 
+        event.cycle = cycle;
+        event.commit();
         return reports;
     }
 
     public CompletableFuture<ComparisonReport> compareVersions(final String oldId, final String newId) {
-        final VersionDescriptor.Reference ours = this.references.get(oldId);
-        final VersionDescriptor.Reference theirs = this.references.get(newId);
-        if (ours == null || theirs == null) {
+        final int ours = this.index.indexOf(oldId);
+        final int theirs = this.index.indexOf(newId);
+        if (ours == -1 || theirs == -1) {
             Logger.warn("Could not find one of the versions {} or {}", oldId, newId);
             return CompletableFuture.failedFuture(new NoSuchElementException("Could not find " + oldId + " or " + newId));
         }
 
-        if (ours.sha1().equals(theirs.sha1())) { // no change
+        if (this.index.sha1(ours).equals(this.index.sha1(theirs))) { // no change
             return CompletableFuture.completedFuture(ComparisonReport.builder()
                 .versionId(newId)
                 .modifiedVersion()
-                .time(theirs.time().toInstant())
+                .time(this.index.time(theirs))
                 .description("No changes since " + oldId)
                 .build());
         }
@@ -240,45 +199,276 @@ public class ManifestState {
         final var builder = ComparisonReport.builder()
             .versionId(newId)
             .modifiedVersion()
-            .time(theirs.time().toInstant())
+            .time(this.index.time(theirs))
             .description("Changes since " + oldId);
 
-        return this.version(oldId).thenCombine(this.version(newId), (original, changed) -> {
-            this.populateComparison(original.get(), changed.get(), builder, false);
-            return builder.build();
+        return this.compareDescriptors(
+            builder,
+            this.index.sha1(ours),
+            this.index.sha1(theirs),
+            this.index.url(ours),
+            this.index.url(theirs),
+            false,
+            this.index.priority(theirs),
+            () -> this.version(oldId),
+            () -> this.version(newId),
+            0
+        );
+    }
+
+    /**
+     * Complete a report from the differences between two descriptors.
+     *
+     * <p>Descriptors are only loaded if the comparison has not been made before.</p>
+     */
+    private CompletableFuture<ComparisonReport> compareDescriptors(
+        final ComparisonReport.Builder builder,
+        final String originalSha1,
+        final String modifiedSha1,
+        final String originalUrl,
+        final String modifiedUrl,
+        final boolean isModifiedVersion,
+        final FetchScheduler.Priority priority,
+        final Supplier<CompletableFuture<ResolutionResult<CompactDescriptor>>> original,
+        final Supplier<CompletableFuture<ResolutionResult<CompactDescriptor>>> modified,
+        final long cycle
+    ) {
+        final @Nullable JarCache jarCache = this.jars;
+        final Set<String> comparedJars = jarCache == null ? Set.of() : jarCache.downloads();
+        final ComparisonMemo.Key key = new ComparisonMemo.Key(originalSha1, modifiedSha1, isModifiedVersion, comparedJars);
+        final ComparisonMemo.@Nullable Result memoized = this.comparisons.get(key);
+        if (memoized != null) {
+            return CompletableFuture.completedFuture(builder.putAllSections(memoized.sections()).addAllLinks(memoized.links()).build());
+        }
+
+        return original.get().thenCombine(modified.get(), Pair::of).thenCompose(descriptors -> {
+            final CompactDescriptor oldDescriptor = descriptors.first().get();
+            final CompactDescriptor newDescriptor = descriptors.second().get();
+            final CompletableFuture<@Nullable AssetIndexDiff> assets = this.compareAssets(oldDescriptor, newDescriptor, priority, cycle);
+            final CompletableFuture<@Nullable List<StructuralDiff.Change>> structure = this.compareStructure(oldDescriptor, newDescriptor, originalSha1, modifiedSha1, originalUrl, modifiedUrl, priority, cycle);
+            final CompletableFuture<@Nullable Map<String, JarDiff>> jars = this.compareJars(oldDescriptor, newDescriptor, cycle);
+            return CompletableFuture.allOf(assets, structure, jars).thenApply($ -> {
+                final ComparisonMemo.Result result = populateComparison(oldDescriptor, newDescriptor, assets.join(), structure.join(), jars.join(), isModifiedVersion, cycle);
+                // retry incomplete comparisons later
+                if ((assets.join() != null || !assetIndexesDiffer(oldDescriptor, newDescriptor)) && structure.join() != null && jars.join() != null) {
+                    this.comparisons.put(key, result);
+                }
+                return builder.putAllSections(result.sections()).addAllLinks(result.links()).build();
+            });
         });
     }
 
-    private void populateComparison(
-        final VersionDescriptor.Full original,
-        final VersionDescriptor.Full modified,
-        final ComparisonReport.Builder diff,
-        final boolean isModifiedVersion
+    /**
+     * Compare the asset indexes referenced by two descriptors, if they differ.
+     *
+     * <p>A failure to load either index is logged rather than failing the
+     * whole comparison, and leaves the object counts out of the report.</p>
+     *
+     * @return a future providing the differences, or {@code null} if not available
+     */
+    private CompletableFuture<@Nullable AssetIndexDiff> compareAssets(
+        final CompactDescriptor original,
+        final CompactDescriptor modified,
+        final FetchScheduler.Priority priority,
+        final long cycle
     ) {
+        final CompactDescriptor.@Nullable Download originalIndex = original.assetIndex();
+        final CompactDescriptor.@Nullable Download modifiedIndex = modified.assetIndex();
+        if (originalIndex == null || modifiedIndex == null || !assetIndexesDiffer(original, modified)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return this.descriptors.loadFile(originalIndex.sha1Hex(), originalIndex.url(), priority, cycle)
+            .thenCombine(this.descriptors.loadFile(modifiedIndex.sha1Hex(), modifiedIndex.url(), priority, cycle), (oldIndex, newIndex) -> {
+                if (oldIndex == null || newIndex == null) {
+                    Logger.warn("Could not find asset indexes {} or {} to compare {}", original.assets(), modified.assets(), modified.id());
+                    return null;
+                }
+                try {
+                    return AssetIndexDiff.compare(oldIndex, newIndex);
+                } catch (final IOException | RuntimeException ex) {
+                    Logger.warn(ex, "Failed to compare asset indexes {} and {} for {}", original.assets(), modified.assets(), modified.id());
+                    return null;
+                }
+            })
+            .exceptionally(error -> {
+                Logger.warn(error, "Failed to load asset indexes {} and {} for {}", original.assets(), modified.assets(), modified.id());
+                return null;
+            });
+    }
+
+    /**
+     * Compare every top-level property of two descriptors without a dedicated section.
+     *
+     * <p>Only properties whose hashes differ are compared, reading both
+     * raw descriptors back from the store, or downloading them again if
+     * they cannot be read.</p>
+     *
+     * @return a future providing the changes, or {@code null} if not available
+     */
+    private CompletableFuture<@Nullable List<StructuralDiff.Change>> compareStructure(
+        final CompactDescriptor original,
+        final CompactDescriptor modified,
+        final String originalSha1,
+        final String modifiedSha1,
+        final String originalUrl,
+        final String modifiedUrl,
+        final FetchScheduler.Priority priority,
+        final long cycle
+    ) {
+        final Set<String> properties = StructuralDiff.changedProperties(original.structure(), modified.structure());
+        if (properties.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+
+        return this.descriptors.loadFile(originalSha1, originalUrl, priority, cycle)
+            .thenCombine(this.descriptors.loadFile(modifiedSha1, modifiedUrl, priority, cycle), (oldDescriptor, newDescriptor) -> {
+                if (oldDescriptor == null || newDescriptor == null) {
+                    Logger.warn("Could not find descriptors for {}, not comparing {}", modified.id(), properties);
+                    return null;
+                }
+                try {
+                    return StructuralDiff.compare(oldDescriptor, newDescriptor, properties);
+                } catch (final IOException | RuntimeException ex) {
+                    Logger.warn(ex, "Failed to compare {} of {}", properties, modified.id());
+                    return null;
+                }
+            })
+            .exceptionally(error -> {
+                Logger.warn(error, "Failed to load descriptors to compare {} of {}", properties, modified.id());
+                return null;
+            });
+    }
+
+    /**
+     * Compare the contents of each configured jar whose hash differs between two descriptors.
+     *
+     * <p>Nothing is compared unless jar comparison is enabled.</p>
+     *
+     * @return a future providing the differences by download name, or {@code null} if any jar could not be compared
+     */
+    private CompletableFuture<@Nullable Map<String, JarDiff>> compareJars(final CompactDescriptor original, final CompactDescriptor modified, final long cycle) {
+        final @Nullable JarCache jars = this.jars;
+        if (jars == null) {
+            return CompletableFuture.completedFuture(Map.of());
+        }
+
+        final Map<String, CompletableFuture<JarDiff>> pending = new LinkedHashMap<>();
+        for (final Map.Entry<String, CompactDescriptor.Download> entry : modified.downloads().entrySet()) {
+            final CompactDescriptor.@Nullable Download previous = original.downloads().get(entry.getKey());
+            final CompactDescriptor.Download current = entry.getValue();
+            if (previous != null && jars.downloads().contains(entry.getKey()) && !Arrays.equals(previous.sha1(), current.sha1())) {
+                pending.put(entry.getKey(), jars.get(previous.sha1Hex(), previous.url(), cycle)
+                    .thenCombine(jars.get(current.sha1Hex(), current.url(), cycle), Pair::of)
+                    .thenCompose(files -> JarDiff.compare(files.first(), files.second(), jars.executor())));
+            }
+        }
+
+        return CompletableFuture.allOf(pending.values().toArray(CompletableFuture[]::new)).handle(($, error) -> {
+            if (error != null) {
+                Logger.warn(error, "Failed to compare jars of {}", modified.id());
+                return null;
+            }
+            final Map<String, JarDiff> result = new LinkedHashMap<>();
+            for (final Map.Entry<String, CompletableFuture<JarDiff>> entry : pending.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().join());
+            }
+            return result;
+        });
+    }
+
+    private static boolean assetIndexesDiffer(final CompactDescriptor original, final CompactDescriptor modified) {
+        return original.assetIndex() != null
+            && modified.assetIndex() != null
+            && !Arrays.equals(original.assetIndex().sha1(), modified.assetIndex().sha1());
+    }
+
+    private static ComparisonMemo.Result populateComparison(
+        final CompactDescriptor original,
+        final CompactDescriptor modified,
+        final @Nullable AssetIndexDiff assets,
+        final @Nullable List<StructuralDiff.Change> structure,
+        final @Nullable Map<String, JarDiff> jars,
+        final boolean isModifiedVersion,
+        final long cycle
+    ) {
+        final Map<String, List<String>> diff = new LinkedHashMap<>();
         // downloads
         if (!Objects.equals(original.downloads(), modified.downloads())) {
-            diff.putSectionIfNotEmpty("Downloads", this.populateDownloads(original.downloads(), modified.downloads(), isModifiedVersion));
+            section(diff, modified, "Downloads", cycle, () -> populateDownloads(original.downloads(), modified.downloads(), isModifiedVersion));
+        }
+        // jar contents
+        if (jars != null) {
+            for (final Map.Entry<String, JarDiff> entry : jars.entrySet()) {
+                section(diff, modified, jarTitle(entry.getKey()), cycle, entry.getValue()::lines);
+            }
         }
         // asset index
-        if (!Objects.equals(original.assets(), modified.assets())) {
-            diff.putSection("Assets", List.of(String.format("`%s` -> `%s`", original.assets(), modified.assets())));
+        if (!Objects.equals(original.assets(), modified.assets()) || assets != null) {
+            section(diff, modified, "Assets", cycle, () -> {
+                final List<String> lines = new ArrayList<>();
+                if (!Objects.equals(original.assets(), modified.assets())) {
+                    lines.add(String.format("`%s` -> `%s`", original.assets(), modified.assets()));
+                }
+                if (assets != null) {
+                    lines.addAll(assets.lines());
+                }
+                return lines;
+            });
         }
         // libraries
-        if (!Objects.equals(original.libraries(), modified.libraries())) {
-            diff.putSectionIfNotEmpty("Libraries", this.populateLibraries(original.libraries(), modified.libraries()));
+        if (!original.libraries().equals(modified.libraries())) {
+            final LibraryChanges libraries = populateLibraries(original.libraries(), modified.libraries());
+            section(diff, modified, "Libraries", cycle, libraries::libraries);
+            section(diff, modified, "Natives", cycle, libraries::natives);
         }
         // java version
         if (!Objects.equals(original.javaVersion(), modified.javaVersion())) {
-            diff.putSectionIfNotEmpty("Java Version", this.populateJavaVersion(original.javaVersion(), modified.javaVersion()));
+            section(diff, modified, "Java Version", cycle, () -> populateJavaVersion(original.javaVersion(), modified.javaVersion()));
+        }
+        // everything else
+        if (structure != null) {
+            for (final Map.Entry<String, List<String>> section : StructuralDiff.sections(structure, NONE).entrySet()) {
+                section(diff, modified, section.getKey(), cycle, section::getValue);
+            }
         }
 
         // links to downloads
-        for (final Map.Entry<DownloadClassifier, Download> entry : modified.downloads().entrySet()) {
-            diff.addLink(Pair.of(entry.getKey().name().toLowerCase(Locale.ROOT), entry.getValue().url()));
+        final List<Pair<String, URL>> links = new ArrayList<>();
+        for (final Map.Entry<String, CompactDescriptor.Download> entry : modified.downloads().entrySet()) {
+            try {
+                links.add(Pair.of(entry.getKey(), URI.create(entry.getValue().url()).toURL()));
+            } catch (final MalformedURLException | IllegalArgumentException ex) {
+                Logger.debug(ex, "Invalid URL for download {} of {}", entry.getKey(), modified.id());
+            }
         }
+        return new ComparisonMemo.Result(diff, links);
     }
 
-    private List<String> populateJavaVersion(final @Nullable JavaRuntimeVersion current, final @Nullable JavaRuntimeVersion modified) {
+    private static void section(
+        final Map<String, List<String>> diff,
+        final CompactDescriptor modified,
+        final String title,
+        final long cycle,
+        final Supplier<List<String>> populator
+    ) {
+        final PipelineEvents.ComparisonSection event = new PipelineEvents.ComparisonSection();
+        event.begin();
+        final List<String> lines = populator.get();
+        if (!lines.isEmpty()) {
+            diff.put(title, lines);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.cycle = cycle;
+            event.versionId = modified.id();
+            event.section = title;
+            event.lines = lines.size();
+            event.commit();
+        }
+    }
+
+    private static List<String> populateJavaVersion(final CompactDescriptor.@Nullable JavaVersion current, final CompactDescriptor.@Nullable JavaVersion modified) {
         final List<String> changes = new ArrayList<>();
         final String currentMajorVersion = current == null ? UNKNOWN : String.valueOf(current.majorVersion());
         final String currentComponent = current == null ? UNKNOWN : current.component();
@@ -296,56 +486,81 @@ public class ManifestState {
         return changes;
     }
 
-    private List<String> populateLibraries(final List<Library> current, final List<Library> modified) {
-        final Map<String, Library> ours = this.index(current);
-        final Map<String, Library> theirs = this.index(modified);
-        final Map<String, Pair<Library, Library>> shared = new HashMap<>();
-        // compute the difference
-        for (final var it = ours.entrySet().iterator(); it.hasNext();) {
-            final var entry = it.next();
-            final @Nullable Library theirLibrary = theirs.remove(entry.getKey());
-            if (theirLibrary != null) {
-                shared.put(entry.getKey(), Pair.of(entry.getValue(), theirLibrary));
-                it.remove();
-            }
-        }
+    /**
+     * Changes to the libraries of a version.
+     *
+     * @param libraries lines describing changes to ordinary libraries
+     * @param natives lines describing changes to native libraries, grouped by operating system
+     */
+    record LibraryChanges(List<String> libraries, List<String> natives) {
+    }
 
+    /**
+     * Compare the libraries of two descriptors.
+     *
+     * <p>Libraries are matched on their coordinates, classifier and rules,
+     * with a single pass over both sorted sets. As well as version changes,
+     * an artifact re-published under the same version is reported with its
+     * old and new hashes.</p>
+     */
+    static LibraryChanges populateLibraries(final CompactDescriptor.Libraries current, final CompactDescriptor.Libraries modified) {
+        final List<String> libraries = new ArrayList<>();
+        final Map<String, List<String>> natives = new TreeMap<>();
+        int ours = 0;
+        int theirs = 0;
+        while (ours < current.size() || theirs < modified.size()) {
+            final int order = ours == current.size() ? 1
+                : theirs == modified.size() ? -1
+                : current.key(ours).compareTo(modified.key(theirs));
+            final CompactDescriptor.@Nullable Library before = order <= 0 ? current.get(ours++) : null;
+            final CompactDescriptor.@Nullable Library after = order >= 0 ? modified.get(theirs++) : null;
+            if (before != null && before.equals(after)) {
+                continue;
+            }
 
-        final List<String> result = new ArrayList<>();
-        for (final var library : ours.entrySet()) { // removed
-            result.add("- `" + library.getKey() + "`: `" + library.getValue().name().version() + "` -> " + NONE);
-        }
-        for (final var library : theirs.entrySet()) { // added
-            result.add("- `" + library.getKey() + "`: " + NONE + " -> `" + library.getValue().name().version() + '`');
-        }
-        for (final var change : shared.entrySet()) { // changed
-            final Pair<Library, Library> oldToNew = change.getValue();
-            if (!oldToNew.first().name().equals(oldToNew.second().name())) {
-                result.add("- `" + change.getKey() + "`: `" + oldToNew.first().name().version() + "` -> `" + oldToNew.second().name().version() + '`');
+            final CompactDescriptor.Library library = after == null ? before : after;
+            final String line = "- `" + library.name() + "`: " + describeLibraryChange(before, after);
+            if (library.natives()) {
+                natives.computeIfAbsent(library.os() == null ? "any" : library.os(), $ -> new ArrayList<>()).add(line);
+            } else {
+                libraries.add(library.os() == null ? line : line + " (" + library.os() + ')');
             }
         }
 
-        return result;
+        final List<String> nativeLines = new ArrayList<>();
+        for (final Map.Entry<String, List<String>> os : natives.entrySet()) {
+            nativeLines.add("__" + os.getKey() + "__:");
+            nativeLines.addAll(os.getValue());
+        }
+        return new LibraryChanges(libraries, nativeLines);
     }
 
-    private Map<String, Library> index(final List<Library> libraries) {
-        final var result = new HashMap<String, Library>();
-        for (final Library library : libraries) {
-            if (!library.isNatives()) {
-                result.put(library.name().group() + ':' + library.name().artifact(), library);
-            }
+    private static String describeLibraryChange(final CompactDescriptor.@Nullable Library before, final CompactDescriptor.@Nullable Library after) {
+        if (before == null) {
+            return NONE + " -> `" + after.version() + '`';
+        } else if (after == null) {
+            return '`' + before.version() + "` -> " + NONE;
+        } else if (!before.version().equals(after.version())) {
+            return '`' + before.version() + "` -> `" + after.version() + '`';
+        } else if (!Arrays.equals(before.sha1(), after.sha1())) {
+            return '`' + after.version() + "` re-published: " + libraryHash(before) + " -> " + libraryHash(after);
+        } else {
+            return '`' + after.version() + "` re-published: " + before.size() + " bytes -> " + after.size() + " bytes";
         }
-        return result;
     }
 
-    private List<String> populateDownloads(final Map<DownloadClassifier, Download> current, final Map<DownloadClassifier, Download> modified, final boolean listChangedHashes) {
-        final Map<DownloadClassifier, Download> ours = new HashMap<>(current);
-        final Map<DownloadClassifier, Download> theirs = new HashMap<>(modified);
-        final Map<DownloadClassifier, Pair<Download, Download>> shared = new HashMap<>();
+    private static String libraryHash(final CompactDescriptor.Library library) {
+        return library.sha1() == null ? UNKNOWN : '`' + Hashes.toHex(library.sha1()) + '`';
+    }
+
+    static List<String> populateDownloads(final Map<String, CompactDescriptor.Download> current, final Map<String, CompactDescriptor.Download> modified, final boolean listChangedHashes) {
+        final Map<String, CompactDescriptor.Download> ours = new HashMap<>(current);
+        final Map<String, CompactDescriptor.Download> theirs = new HashMap<>(modified);
+        final Map<String, Pair<CompactDescriptor.Download, CompactDescriptor.Download>> shared = new HashMap<>();
         // compute the difference
         for (final var it = ours.entrySet().iterator(); it.hasNext();) {
             final var entry = it.next();
-            final @Nullable Download theirDownload = theirs.remove(entry.getKey());
+            final CompactDescriptor.@Nullable Download theirDownload = theirs.remove(entry.getKey());
             if (theirDownload != null) {
                 shared.put(entry.getKey(), Pair.of(entry.getValue(), theirDownload));
                 it.remove();
@@ -353,65 +568,76 @@ public class ManifestState {
         }
         final List<String> result = new ArrayList<>();
         for (final var download : ours.keySet()) { // removed
-            result.add("Removed: `" + download + "`");
+            result.add("Removed: `" + displayName(download) + "`");
         }
         for (final var download : theirs.keySet()) { // added
-            result.add("Added: `" + download + "`");
+            result.add("Added: `" + displayName(download) + "`");
         }
         if (listChangedHashes) {
             for (final var change : shared.entrySet()) { // modified
-                result.add("Modified: `" + change.getKey() + "`: `" + change.getValue().first().sha1() + "` -> `" + change.getValue().second().sha1() + "`");
+                result.add("Modified: `" + displayName(change.getKey()) + "`: `" + change.getValue().first().sha1Hex() + "` -> `" + change.getValue().second().sha1Hex() + "`");
             }
         }
 
         return result;
     }
 
-    public CompletableFuture<ResolutionResult<VersionDescriptor.Full>> version(final String version) {
-        final VersionDescriptor.Reference ref = this.references.get(version);
-        if (ref == null) {
-            return CompletableFuture.completedFuture(ResolutionResult.notFound());
+    private static String jarTitle(final String download) {
+        return download.isEmpty() ? "Jar" : Character.toUpperCase(download.charAt(0)) + download.substring(1) + " Jar";
+    }
+
+    private static String displayName(final String classifier) {
+        return classifier.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Get the versions whose descriptors are most likely to be needed by the next comparison.
+     *
+     * @param recent the number of most recently updated versions to include
+     * @return version ids, most important first
+     */
+    List<String> likelyVersions(final int recent) {
+        final Set<String> ids = new LinkedHashSet<>();
+        if (this.index.latestRelease() != null) {
+            ids.add(this.index.latestRelease());
         }
+        if (this.index.latestSnapshot() != null) {
+            ids.add(this.index.latestSnapshot());
+        }
+        for (int i = 0; i < Math.min(recent, this.index.size()); i++) {
+            ids.add(this.index.id(this.index.inManifestOrder(i)));
+        }
+        ids.removeIf(id -> this.index.indexOf(id) == -1);
+        return List.copyOf(ids);
+    }
 
-        return this.loadedDescriptors.computeIfAbsent(ref.id(), id -> {
-            final var localFile = this.pathOf(ref);
-            if (Files.exists(localFile)) {
-                return CompletableFuture.supplyAsync(() -> {
-                    try {
-                        return ResolutionResult.result(GsonUtils.parseFromJson(localFile, VersionDescriptor.Full.class), true);
-                    } catch (final IOException ex) {
-                        throw new CompletionException(ex);
-                    }
-                });
-            }
+    /**
+     * Load a descriptor ahead of need, behind any loads for a poll cycle.
+     *
+     * @param version the version id
+     * @return a future providing the descriptor
+     */
+    CompletableFuture<ResolutionResult<CompactDescriptor>> preload(final String version) {
+        final int position = this.index.indexOf(version);
+        if (position == -1) {
+            return CompletableFuture.completedFuture(ResolutionResult.notFound());
+        }
 
-            final CompletableFuture<HttpResponse<Path>> request;
-            try {
-                FileUtils.createDirectoriesSymlinkSafe(localFile.getParent());
-                request = this.client.sendAsync(
-                    VersionAnnouncer.get(ref.url().toURI()),
-                    HttpResponse.BodyHandlers.ofFile(localFile)
-                );
-            } catch (final URISyntaxException | IOException ex) {
-                return CompletableFuture.failedFuture(ex);
-            }
+        final FetchScheduler.Priority priority = new FetchScheduler.Priority(FetchScheduler.Priority.BACKGROUND, this.index.time(position).toEpochMilli());
+        return this.descriptors.load(version, this.index.sha1(position), this.index.url(position), priority, InFlightRequests.NO_CYCLE);
+    }
 
-            return request.thenApply(response -> {
-                if (response.statusCode() == 200) {
-                    try {
-                        return ResolutionResult.result(GsonUtils.parseFromJson(localFile, VersionDescriptor.Full.class), false);
-                    } catch (final IOException ex) {
-                        throw new CompletionException(ex);
-                    }
-                } else {
-                    return ResolutionResult.notFound();
-                }
-            });
-        });
+    public CompletableFuture<ResolutionResult<CompactDescriptor>> version(final String version) {
+        return this.version(version, 0);
     }
 
-    private Path pathOf(final VersionDescriptor.Reference ref) {
-        return this.cacheLocation.resolve("versions").resolve(ref.id()).resolve(ref.sha1() + ".json");
+    private CompletableFuture<ResolutionResult<CompactDescriptor>> version(final String version, final long cycle) {
+        final int position = this.index.indexOf(version);
+        if (position == -1) {
+            return CompletableFuture.completedFuture(ResolutionResult.notFound());
+        }
+
+        return this.descriptors.load(version, this.index.sha1(position), this.index.url(position), this.index.priority(position), cycle);
     }
 
 }
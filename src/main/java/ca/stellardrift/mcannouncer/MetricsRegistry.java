@@ -0,0 +1,157 @@
+package ca.stellardrift.mcannouncer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Collects metrics from the rest of the application, rendering them in the Prometheus text format.
+ *
+ * <p>Metrics are read from their owners at scrape time, so components keep
+ * their own counters and nothing here is on the hot path.</p>
+ *
+ * @see <a href="https://prometheus.io/docs/instrumenting/exposition_formats/#text-based-format">Text-based format</a>
+ */
+final class MetricsRegistry {
+    private final Map<String, Family> families = new LinkedHashMap<>(); // guarded by this
+
+    private enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    private record Family(String name, String help, Type type, List<Sample> samples) {
+    }
+
+    private record Sample(String labels, Object source) { // DoubleSupplier or Histogram
+    }
+
+    /**
+     * Register a monotonically increasing value.
+     *
+     * @param name the metric name, ending in {@code _total}
+     * @param help a description of the metric
+     * @param value the source of the current value
+     * @param labels alternating label names and values
+     */
+    void counter(final String name, final String help, final DoubleSupplier value, final String... labels) {
+        this.register(name, help, Type.COUNTER, value, labels);
+    }
+
+    /**
+     * Register a value that may go up or down.
+     *
+     * @param name the metric name
+     * @param help a description of the metric
+     * @param value the source of the current value
+     * @param labels alternating label names and values
+     */
+    void gauge(final String name, final String help, final DoubleSupplier value, final String... labels) {
+        this.register(name, help, Type.GAUGE, value, labels);
+    }
+
+    /**
+     * Register a histogram.
+     *
+     * @param name the metric name
+     * @param help a description of the metric
+     * @param histogram the histogram
+     * @param labels alternating label names and values
+     */
+    void histogram(final String name, final String help, final Histogram histogram, final String... labels) {
+        this.register(name, help, Type.HISTOGRAM, histogram, labels);
+    }
+
+    private synchronized void register(final String name, final String help, final Type type, final Object source, final String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be provided as name/value pairs");
+        }
+        final Family family = this.families.computeIfAbsent(name, $ -> new Family(name, help, type, new ArrayList<>()));
+        if (family.type() != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type());
+        }
+        family.samples().add(new Sample(formatLabels(labels), source));
+    }
+
+    private static String formatLabels(final String... labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            result.append(i == 0 ? "" : ",").append(labels[i]).append("=\"");
+            final String value = labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                final char c = value.charAt(j);
+                switch (c) {
+                    case '\\' -> result.append("\\\\");
+                    case '"' -> result.append("\\\"");
+                    case '\n' -> result.append("\\n");
+                    default -> result.append(c);
+                }
+            }
+            result.append('"');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Render every registered metric.
+     *
+     * @return the current values, in Prometheus text format
+     */
+    synchronized String scrape() {
+        final StringBuilder out = new StringBuilder(4096);
+        for (final Family family : this.families.values()) {
+            out.append("# HELP ").append(family.name()).append(' ').append(family.help().replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(family.name()).append(' ').append(switch (family.type()) {
+                case COUNTER -> "counter";
+                case GAUGE -> "gauge";
+                case HISTOGRAM -> "histogram";
+            }).append('\n');
+
+            for (final Sample sample : family.samples()) {
+                if (sample.source() instanceof Histogram histogram) {
+                    writeHistogram(out, family.name(), sample.labels(), histogram);
+                } else {
+                    writeSample(out, family.name(), sample.labels(), ((DoubleSupplier) sample.source()).getAsDouble());
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void writeHistogram(final StringBuilder out, final String name, final String labels, final Histogram histogram) {
+        final double[] bounds = histogram.bounds();
+        final long[] counts = histogram.cumulativeCounts();
+        final String prefix = labels.isEmpty() ? "" : labels + ',';
+        for (int i = 0; i < bounds.length; i++) {
+            writeSample(out, name + "_bucket", prefix + "le=\"" + formatValue(bounds[i]) + '"', counts[i]);
+        }
+        writeSample(out, name + "_bucket", prefix + "le=\"+Inf\"", counts[bounds.length]);
+        writeSample(out, name + "_sum", labels, histogram.sum());
+        writeSample(out, name + "_count", labels, counts[bounds.length]);
+    }
+
+    private static void writeSample(final StringBuilder out, final String name, final String labels, final double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(formatValue(value)).append('\n');
+    }
+
+    private static String formatValue(final double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        } else if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        } else {
+            return Double.toString(value);
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package ca.stellardrift.mcannouncer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+
+/**
+ * Serves metrics for scraping by Prometheus.
+ */
+final class MetricsServer implements AutoCloseable {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final MetricsRegistry registry;
+
+    private MetricsServer(final HttpServer server, final MetricsRegistry registry) {
+        this.server = server;
+        this.registry = registry;
+    }
+
+    /**
+     * Start serving metrics.
+     *
+     * @param address the address to listen on
+     * @param path the path to serve metrics at
+     * @param registry the metrics to serve
+     * @param executor the executor to handle requests on
+     * @return the running server
+     * @throws IOException if the server could not bind to its address
+     */
+    static MetricsServer start(final InetSocketAddress address, final String path, final MetricsRegistry registry, final Executor executor) throws IOException {
+        final HttpServer server = HttpServer.create(address, 0);
+        final MetricsServer metrics = new MetricsServer(server, registry);
+        server.createContext(path, metrics::handle);
+        server.setExecutor(executor);
+        server.start();
+        Logger.info("Serving metrics at http://{}:{}{}", address.getHostString(), server.getAddress().getPort(), path);
+        return metrics;
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final String method = exchange.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            final byte[] body = this.registry.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+
+}
@@ -0,0 +1,141 @@
+package ca.stellardrift.mcannouncer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder events for each stage of the announcement pipeline.
+ *
+ * <p>Every event carries the id of the poll cycle it belongs to, so a whole
+ * cycle can be followed across threads. Work done outside any cycle, such as
+ * loading the initial manifest, has a cycle id of {@code 0}.</p>
+ *
+ * <p>Stack traces are not recorded, keeping the events cheap enough to leave
+ * enabled. A recording can be started in a running process with
+ * {@code jcmd <pid> JFR.start}.</p>
+ */
+final class PipelineEvents {
+    private static final String CATEGORY = "Version Announcer";
+
+    private PipelineEvents() {
+    }
+
+    @Category(CATEGORY)
+    @StackTrace(false)
+    abstract static class CycleEvent extends Event {
+        @Label("Poll Cycle")
+        @Description("Identifies the poll cycle this event is part of")
+        long cycle;
+    }
+
+    @Name("ca.stellardrift.mcannouncer.ManifestFetch")
+    @Label("Manifest Fetch")
+    @Description("A request for the version manifest")
+    static final class ManifestFetch extends CycleEvent {
+        @Label("Status")
+        int status;
+
+        @Label("Body Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Not Modified")
+        @Description("Whether the server accepted our validators")
+        boolean notModified;
+    }
+
+    @Name("ca.stellardrift.mcannouncer.ManifestParse")
+    @Label("Manifest Parse")
+    static final class ManifestParse extends CycleEvent {
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Versions")
+        int versions;
+    }
+
+    @Name("ca.stellardrift.mcannouncer.DescriptorLoad")
+    @Label("Descriptor Load")
+    static final class DescriptorLoad extends CycleEvent {
+        static final String MEMORY = "memory";
+        static final String DISK = "disk";
+        static final String NETWORK = "network";
+
+        @Label("Version")
+        String versionId;
+
+        @Label("Source")
+        @Description("Where the descriptor was loaded from: memory, disk, or network")
+        String source;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    @Name("ca.stellardrift.mcannouncer.Compare")
+    @Label("Manifest Comparison")
+    static final class Compare extends CycleEvent {
+        @Label("Added")
+        int added;
+
+        @Label("Removed")
+        int removed;
+
+        @Label("Changed")
+        int changed;
+    }
+
+    @Name("ca.stellardrift.mcannouncer.ComparisonSection")
+    @Label("Comparison Section")
+    @Description("Comparison of one aspect of a pair of version descriptors")
+    static final class ComparisonSection extends CycleEvent {
+        @Label("Version")
+        String versionId;
+
+        @Label("Section")
+        String section;
+
+        @Label("Lines")
+        int lines;
+    }
+
+    @Name("ca.stellardrift.mcannouncer.Render")
+    @Label("Report Render")
+    static final class Render extends CycleEvent {
+        @Label("Version")
+        String versionId;
+
+        @Label("Embeds")
+        int embeds;
+
+        @Label("Length")
+        @Description("Characters counted towards Discord's embed limit")
+        int length;
+    }
+
+    @Name("ca.stellardrift.mcannouncer.WebhookSend")
+    @Label("Webhook Send")
+    static final class WebhookSend extends CycleEvent {
+        @Label("Endpoint")
+        String endpoint;
+
+        @Label("Status")
+        @Description("The response status, or 0 if no response was received")
+        int status;
+
+        @Label("Payload Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Attempt")
+        int attempt;
+    }
+
+}
@@ -0,0 +1,271 @@
+package ca.stellardrift.mcannouncer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.tinylog.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A single poll of the manifest, from fetching through to delivering announcements.
+ *
+ * <p>Only one cycle may run at a time. Each stage has its own deadline, and
+ * a stage that overruns is cancelled along with the cycle's HTTP requests
+ * in flight and its descriptor loads still queued. The last known
+ * manifest only advances once the diff stage has completed, so a cycle
+ * that fails before that point is retried in full.</p>
+ */
+final class PollPipeline {
+    enum Stage {
+        FETCH, // fetch and parse the manifest
+        DIFF, // compare manifests and resolve descriptors
+        RENDER, // produce webhook messages
+        DELIVER // send to webhooks
+    }
+
+    @FunctionalInterface
+    interface Renderer {
+        List<RenderedMessage> render(List<ComparisonReport> reports, long cycle);
+    }
+
+    @FunctionalInterface
+    interface Sender {
+        CompletableFuture<?> send(RenderedMessage message, long cycle);
+    }
+
+    private final ManifestFetcher manifests;
+    private final InFlightRequests requests;
+    private final FetchScheduler fetches;
+    private final Config.Polling config;
+    private final Executor executor;
+    private final Renderer renderer;
+    private final Sender sender;
+
+    private final AtomicReference<@Nullable CompletableFuture<PollScheduler.Outcome>> running = new AtomicReference<>();
+    private final AtomicLong cycles = new AtomicLong();
+    private final LongAdder failedCycles = new LongAdder();
+    private final Histogram cycleLatency = Histogram.latency();
+    private final Map<Stage, Histogram> stageLatency = new EnumMap<>(Stage.class);
+    private final Histogram diffSize = new Histogram(0, 1, 2, 5, 10, 25, 50, 100);
+    private final Histogram detectionToDelivery = Histogram.latency();
+    private volatile CompletableFuture<ManifestState> current;
+
+    PollPipeline(
+        final ManifestFetcher manifests,
+        final InFlightRequests requests,
+        final FetchScheduler fetches,
+        final Config.Polling config,
+        final Executor executor,
+        final CompletableFuture<ManifestState> initial,
+        final Renderer renderer,
+        final Sender sender
+    ) {
+        this.manifests = manifests;
+        this.requests = requests;
+        this.fetches = fetches;
+        this.config = config;
+        this.executor = executor;
+        this.current = initial;
+        this.renderer = renderer;
+        this.sender = sender;
+        for (final Stage stage : Stage.values()) {
+            this.stageLatency.put(stage, Histogram.latency());
+        }
+    }
+
+    /**
+     * Get the most recently diffed manifest state.
+     *
+     * @return the current state
+     */
+    CompletableFuture<ManifestState> current() {
+        return this.current;
+    }
+
+    /**
+     * Get whether a poll cycle is currently running.
+     *
+     * @return whether a cycle is running
+     */
+    boolean isRunning() {
+        return this.running.get() != null;
+    }
+
+    /**
+     * Run a poll cycle, unless one is already running.
+     *
+     * @return a future completing when the cycle has finished
+     */
+    CompletableFuture<PollScheduler.Outcome> run() {
+        final var cycle = new CompletableFuture<PollScheduler.Outcome>();
+        final var existing = this.running.compareAndExchange(null, cycle);
+        if (existing != null) {
+            Logger.warn("Previous poll cycle is still running, not starting another");
+            return existing;
+        }
+
+        final long id = this.cycles.incrementAndGet();
+        final long start = System.nanoTime();
+        Logger.debug("Beginning poll cycle {}", id);
+        final CompletableFuture<@Nullable ManifestState> previous = this.current.exceptionally(error -> null);
+        final AtomicBoolean changed = new AtomicBoolean();
+        final AtomicLong detected = new AtomicLong(); // System.nanoTime once the manifest has been fetched
+
+        this.stage(Stage.FETCH, id, () -> this.manifests.fetch(false, id))
+            .thenCompose(next -> {
+                detected.set(System.nanoTime());
+                return previous.thenCompose(last -> this.stage(Stage.DIFF, id, () -> this.diff(last, next, id)))
+                    .thenApply(reports -> {
+                        this.current = CompletableFuture.completedFuture(next); // update on success
+                        changed.set(!reports.isEmpty());
+                        this.diffSize.observe(reports.size());
+                        return reports;
+                    });
+            })
+            .thenCompose(reports -> reports.isEmpty()
+                ? CompletableFuture.<Void>completedFuture(null)
+                : this.stage(Stage.RENDER, id, () -> CompletableFuture.supplyAsync(() -> this.renderer.render(reports, id), this.executor))
+                    .thenCompose(messages -> this.stage(Stage.DELIVER, id, () -> this.deliver(messages, id)))
+                    .thenRun(() -> this.detectionToDelivery.observeSince(detected.get())))
+            .handle(($, error) -> {
+                this.cycleLatency.observeSince(start);
+                if (error != null) {
+                    this.failedCycles.increment();
+                    Logger.error(unwrap(error), "Error occurred during poll cycle {}", id);
+                } else {
+                    Logger.debug("Completed poll cycle {}", id);
+                }
+                return new PollScheduler.Outcome(changed.get(), error != null, this.manifests.lastResponse());
+            })
+            .whenComplete((outcome, $) -> {
+                this.running.set(null);
+                cycle.complete(outcome);
+            });
+
+        return cycle;
+    }
+
+    private CompletableFuture<List<ComparisonReport>> diff(final @Nullable ManifestState last, final ManifestState next, final long cycle) {
+        if (last == null) {
+            // the previous state failed to load, so use this one as a baseline
+            return CompletableFuture.completedFuture(List.of());
+        }
+
+        final List<CompletableFuture<ComparisonReport>> reports = last.compare(next, cycle);
+        if (reports.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        Logger.info("Successfully detected {} changes", reports.size());
+
+        // a failure to prepare one report should not prevent announcing the others
+        final List<CompletableFuture<@Nullable ComparisonReport>> tolerant = new ArrayList<>(reports.size());
+        for (final CompletableFuture<ComparisonReport> report : reports) {
+            tolerant.add(report.exceptionally(error -> {
+                Logger.error(unwrap(error), "Failed to prepare report");
+                return null;
+            }));
+        }
+
+        return CompletableFuture.allOf(tolerant.toArray(new CompletableFuture<?>[0])).thenApply($ -> {
+            final List<ComparisonReport> completed = new ArrayList<>(tolerant.size());
+            for (final var report : tolerant) {
+                final @Nullable ComparisonReport result = report.join();
+                if (result != null) {
+                    completed.add(result);
+                }
+            }
+            // announce the newest versions first
+            completed.sort(Comparator.comparing(ComparisonReport::time, Comparator.nullsLast(Comparator.reverseOrder())));
+            return completed;
+        });
+    }
+
+    private CompletableFuture<Void> deliver(final List<RenderedMessage> messages, final long cycle) {
+        final List<CompletableFuture<?>> sent = new ArrayList<>(messages.size());
+        for (final RenderedMessage message : messages) {
+            sent.add(this.sender.send(message, cycle));
+        }
+        return CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private <T> CompletableFuture<T> stage(final Stage stage, final long cycle, final Supplier<CompletableFuture<T>> action) {
+        final long start = System.nanoTime();
+        final CompletableFuture<T> result;
+        try {
+            result = action.get();
+        } catch (final RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+
+        final Duration deadline = this.config.stageTimeout(stage);
+        return result.copy()
+            .orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS)
+            .whenComplete(($, error) -> {
+                this.stageLatency.get(stage).observeSince(start);
+                if (unwrap(error) instanceof TimeoutException) {
+                    result.cancel(true);
+                    final int dropped = this.fetches.cancel(cycle);
+                    final int aborted = this.requests.cancel(cycle);
+                    Logger.warn("Poll stage {} exceeded its deadline of {}, dropped {} queued loads and aborted {} requests", stage, deadline, dropped, aborted);
+                }
+            });
+    }
+
+    long cycles() {
+        return this.cycles.get();
+    }
+
+    long failedCycles() {
+        return this.failedCycles.sum();
+    }
+
+    /**
+     * Get the time taken by each complete poll cycle.
+     *
+     * @return the cycle latency, in seconds
+     */
+    Histogram cycleLatency() {
+        return this.cycleLatency;
+    }
+
+    Histogram stageLatency(final Stage stage) {
+        return this.stageLatency.get(stage);
+    }
+
+    /**
+     * Get the number of reports produced by each successful diff.
+     *
+     * @return the diff sizes
+     */
+    Histogram diffSize() {
+        return this.diffSize;
+    }
+
+    /**
+     * Get the time from fetching a changed manifest to delivering every announcement of the change.
+     *
+     * @return the detection to delivery latency, in seconds
+     */
+    Histogram detectionToDelivery() {
+        return this.detectionToDelivery;
+    }
+
+    private static @Nullable Throwable unwrap(final @Nullable Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+}
@@ -0,0 +1,139 @@
+package ca.stellardrift.mcannouncer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.tinylog.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Schedules manifest polls, adapting the interval to recent activity.
+ *
+ * <p>Releases tend to come in bursts, so the interval drops to the configured
+ * minimum whenever a change is detected, then gradually relaxes towards the
+ * maximum while nothing changes. Server caching and rate-limit hints are
+ * respected, and failures back off exponentially.</p>
+ */
+final class PollScheduler {
+    private final ScheduledExecutorService timer;
+    private final Config.Polling config;
+    private final Supplier<CompletableFuture<Outcome>> poll;
+
+    private volatile boolean running;
+    private volatile long effectiveDelay; // millis
+    private long interval; // millis, without jitter or server hints
+    private int consecutiveFailures;
+
+    /**
+     * The result of a single poll.
+     *
+     * @param changed whether any changes were detected
+     * @param failed whether the poll failed
+     * @param response caching hints from the manifest server, if a response was received
+     */
+    record Outcome(boolean changed, boolean failed, ManifestFetcher.@Nullable ResponseInfo response) {
+    }
+
+    PollScheduler(final ScheduledExecutorService timer, final Config.Polling config, final Supplier<CompletableFuture<Outcome>> poll) {
+        this.timer = timer;
+        this.config = config;
+        this.poll = poll;
+        this.interval = config.minimumInterval().toMillis();
+    }
+
+    void start() {
+        this.running = true;
+        this.schedule(0);
+    }
+
+    void stop() {
+        this.running = false;
+    }
+
+    /**
+     * Get the delay most recently scheduled between polls.
+     *
+     * @return the effective poll interval
+     */
+    Duration effectiveInterval() {
+        return Duration.ofMillis(this.effectiveDelay);
+    }
+
+    private void schedule(final long delay) {
+        if (!this.running) {
+            return;
+        }
+        this.effectiveDelay = delay;
+        try {
+            this.timer.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException ex) {
+            // shutting down
+            this.running = false;
+        }
+    }
+
+    private void run() {
+        CompletableFuture<Outcome> result;
+        try {
+            result = this.poll.get();
+        } catch (final RuntimeException ex) {
+            result = CompletableFuture.failedFuture(ex);
+        }
+
+        result.whenComplete((outcome, error) -> {
+            if (error != null) {
+                Logger.error(error, "Unexpected failure while polling");
+                this.schedule(this.nextDelay(new Outcome(false, true, null)));
+            } else {
+                this.schedule(this.nextDelay(outcome));
+            }
+        });
+    }
+
+    // only called from completion of a poll, which never overlap
+    private long nextDelay(final Outcome outcome) {
+        final long minimum = this.config.minimumInterval().toMillis();
+        final long maximum = this.config.maximumInterval().toMillis();
+        final ManifestFetcher.@Nullable ResponseInfo response = outcome.response();
+
+        long delay;
+        if (outcome.failed() || (response != null && response.isServerError())) {
+            this.consecutiveFailures++;
+            final long backoff = this.interval << Math.min(this.consecutiveFailures, 16);
+            delay = Math.min(backoff, this.config.maximumBackoff().toMillis());
+        } else {
+            this.consecutiveFailures = 0;
+            if (outcome.changed()) {
+                this.interval = minimum;
+            } else {
+                this.interval = Math.min(maximum, (long) (this.interval * this.config.relaxFactor()));
+            }
+            delay = this.interval;
+        }
+
+        final double jitter = this.config.jitter();
+        if (jitter > 0) {
+            delay += (long) (delay * jitter * ThreadLocalRandom.current().nextDouble(-1, 1));
+        }
+
+        // floors from the server are applied after jitter, so they are never undercut
+        if (response != null) {
+            if (response.retryAfter() != null) {
+                delay = Math.max(delay, response.retryAfter().toMillis());
+            } else if (response.freshness() != null) {
+                // polling again before the server's copy expires will not tell us anything new
+                delay = Math.max(delay, Math.min(response.freshness().toMillis(), maximum));
+            }
+        }
+
+        delay = Math.max(delay, 1000);
+        Logger.debug("Next poll in {} ms", delay);
+        return delay;
+    }
+
+}
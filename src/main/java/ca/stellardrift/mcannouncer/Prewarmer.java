@@ -0,0 +1,129 @@
+package ca.stellardrift.mcannouncer;
+
+import org.tinylog.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the descriptors a comparison is most likely to need before a poll asks for them.
+ *
+ * <p>Loads run in the background at the lowest priority, so they never delay
+ * a poll cycle. A poll that needs a descriptor that is still queued raises
+ * its priority instead. Once the time budget has passed, no further loads
+ * are started.</p>
+ */
+final class Prewarmer {
+    private final Config.Prewarm config;
+    private final int parallelism;
+
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile int total;
+
+    Prewarmer(final Config.Prewarm config, final int parallelism) {
+        this.config = config;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Begin loading descriptors for a manifest.
+     *
+     * @param state the manifest to load descriptors from
+     * @return a future completing once every started load has finished
+     */
+    CompletableFuture<Void> run(final ManifestState state) {
+        final List<String> versions = state.likelyVersions(this.config.recentVersions());
+        this.total = versions.size();
+        Logger.info("Pre-warming {} version descriptors", versions.size());
+        return new Run(state, versions, System.nanoTime() + this.config.budget().toNanos()).start();
+    }
+
+    private final class Run {
+        private final ManifestState state;
+        private final Deque<String> remaining; // guarded by this
+        private final long deadline; // System.nanoTime
+        private final long start = System.nanoTime();
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private int outstanding; // guarded by this
+
+        Run(final ManifestState state, final List<String> versions, final long deadline) {
+            this.state = state;
+            this.remaining = new ArrayDeque<>(versions);
+            this.deadline = deadline;
+        }
+
+        CompletableFuture<Void> start() {
+            for (int i = 0; i < Prewarmer.this.parallelism; i++) {
+                this.next();
+            }
+            this.finishIfDone();
+            return this.result;
+        }
+
+        private void next() {
+            final String version;
+            synchronized (this) {
+                if (this.remaining.isEmpty()) {
+                    return;
+                }
+                if (System.nanoTime() - this.deadline > 0) {
+                    Logger.warn("Pre-warm budget of {} exhausted, skipping {} descriptors", Prewarmer.this.config.budget(), this.remaining.size());
+                    this.remaining.clear();
+                    return;
+                }
+                version = this.remaining.poll();
+                this.outstanding++;
+            }
+
+            this.state.preload(version).whenComplete((descriptor, error) -> {
+                if (error != null || !descriptor.isPresent()) {
+                    Prewarmer.this.failed.incrementAndGet();
+                    Logger.debug(error, "Failed to pre-warm descriptor for {}", version);
+                } else {
+                    final int done = Prewarmer.this.loaded.incrementAndGet();
+                    Logger.debug("Pre-warmed {} ({}/{})", version, done, Prewarmer.this.total);
+                }
+                synchronized (this) {
+                    this.outstanding--;
+                }
+                this.next();
+                this.finishIfDone();
+            });
+        }
+
+        private void finishIfDone() {
+            synchronized (this) {
+                if (this.outstanding > 0 || !this.remaining.isEmpty()) {
+                    return;
+                }
+            }
+            if (this.result.complete(null)) {
+                Logger.info(
+                    "Pre-warmed {} of {} version descriptors in {} ms ({} failed)",
+                    Prewarmer.this.loaded.get(),
+                    Prewarmer.this.total,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.start),
+                    Prewarmer.this.failed.get()
+                );
+            }
+        }
+    }
+
+    int loaded() {
+        return this.loaded.get();
+    }
+
+    int failed() {
+        return this.failed.get();
+    }
+
+    int total() {
+        return this.total;
+    }
+
+}
@@ -0,0 +1,40 @@
+package ca.stellardrift.mcannouncer;
+
+import ca.stellardrift.mcannouncer.util.WebhookUtil;
+import club.minnced.discord.webhook.send.WebhookMessage;
+
+/**
+ * A message that has been serialized once, ready to be sent to any number of endpoints.
+ *
+ * <p>Every endpoint is sent the same request body, so it is produced when
+ * the message is rendered rather than once per delivery.</p>
+ */
+final class RenderedMessage {
+    private final byte[] payload;
+
+    private RenderedMessage(final byte[] payload) {
+        this.payload = payload;
+    }
+
+    /**
+     * Render a message.
+     *
+     * @param message the message
+     * @return the rendered message
+     */
+    static RenderedMessage of(final WebhookMessage message) {
+        return new RenderedMessage(WebhookUtil.toJson(message));
+    }
+
+    /**
+     * Get the request body to send to every endpoint.
+     *
+     * <p>The returned array must not be modified.</p>
+     *
+     * @return the serialized request body
+     */
+    byte[] payload() {
+        return this.payload;
+    }
+
+}
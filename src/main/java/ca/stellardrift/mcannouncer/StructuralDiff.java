@@ -0,0 +1,377 @@
+package ca.stellardrift.mcannouncer;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A structural comparison of the parts of two version descriptors that have no dedicated section.
+ *
+ * <p>Every JSON value has a 64-bit Merkle hash, combining the hashes of its
+ * children. Member order within an object does not affect its hash, while
+ * element order within an array does. Each {@link CompactDescriptor} keeps
+ * the hashes of its top-level properties, so unchanged properties are skipped
+ * without reading the descriptor again. Changed properties are read back into
+ * full trees, and only subtrees whose hashes differ are descended into.</p>
+ */
+final class StructuralDiff {
+    /**
+     * Properties that change whenever a version is re-published, and are already part of every report.
+     */
+    private static final Set<String> IGNORED = Set.of("time", "releaseTime");
+    private static final int MAX_CHANGES = 20; // per property
+    private static final int MAX_VALUE_LENGTH = 80;
+
+    private static final long OBJECT = 0x6f626a656374L;
+    private static final long ARRAY = 0x6172726179L;
+    private static final long TRUE = 0x74727565L;
+    private static final long FALSE = 0x66616c7365L;
+    private static final long NULL = 0x6e756c6cL;
+
+    private StructuralDiff() {
+    }
+
+    /**
+     * A difference at one location in a descriptor.
+     *
+     * @param property the top-level property containing the change
+     * @param path the location of the change, such as {@code arguments.jvm[2]}
+     * @param before the original value, or {@code null} if added
+     * @param after the modified value, or {@code null} if removed
+     */
+    record Change(String property, String path, @Nullable String before, @Nullable String after) {
+    }
+
+    private sealed interface Node {
+        long hash();
+    }
+
+    private record Scalar(long hash, String json) implements Node {
+    }
+
+    private record ObjectNode(long hash, Map<String, Node> members) implements Node {
+    }
+
+    private record ArrayNode(long hash, List<Node> elements) implements Node {
+    }
+
+    /**
+     * Compute the Merkle hash of the next value, without keeping its structure.
+     *
+     * @param reader the reader, positioned before a value
+     * @return the hash of the value
+     * @throws IOException if the value could not be read
+     */
+    static long hash(final JsonReader reader) throws IOException {
+        return switch (reader.peek()) {
+            case BEGIN_OBJECT -> {
+                long hash = OBJECT;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    hash += member(reader.nextName(), hash(reader));
+                }
+                reader.endObject();
+                yield mix(hash);
+            }
+            case BEGIN_ARRAY -> {
+                long hash = ARRAY;
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    hash = element(hash, hash(reader));
+                }
+                reader.endArray();
+                yield mix(hash);
+            }
+            case STRING -> string(reader.nextString());
+            case NUMBER -> number(reader.nextString());
+            case BOOLEAN -> reader.nextBoolean() ? TRUE : FALSE;
+            case NULL -> {
+                reader.nextNull();
+                yield NULL;
+            }
+            default -> throw new JsonSyntaxException("Unexpected " + reader.peek() + " at " + reader.getPath());
+        };
+    }
+
+    private static Node read(final JsonReader reader) throws IOException {
+        return switch (reader.peek()) {
+            case BEGIN_OBJECT -> {
+                final Map<String, Node> members = new LinkedHashMap<>();
+                long hash = OBJECT;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    final String name = reader.nextName();
+                    final Node member = read(reader);
+                    members.put(name, member);
+                    hash += member(name, member.hash());
+                }
+                reader.endObject();
+                yield new ObjectNode(mix(hash), members);
+            }
+            case BEGIN_ARRAY -> {
+                final List<Node> elements = new ArrayList<>();
+                long hash = ARRAY;
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    final Node element = read(reader);
+                    elements.add(element);
+                    hash = element(hash, element.hash());
+                }
+                reader.endArray();
+                yield new ArrayNode(mix(hash), elements);
+            }
+            case STRING -> {
+                final String value = reader.nextString();
+                yield new Scalar(string(value), quote(value));
+            }
+            case NUMBER -> {
+                final String value = reader.nextString();
+                yield new Scalar(number(value), value);
+            }
+            case BOOLEAN -> reader.nextBoolean() ? new Scalar(TRUE, "true") : new Scalar(FALSE, "false");
+            case NULL -> {
+                reader.nextNull();
+                yield new Scalar(NULL, "null");
+            }
+            default -> throw new JsonSyntaxException("Unexpected " + reader.peek() + " at " + reader.getPath());
+        };
+    }
+
+    private static long member(final String name, final long value) {
+        return mix(string(name) * 31 + value);
+    }
+
+    private static long element(final long hash, final long element) {
+        return hash * 0x9e3779b97f4a7c15L + element;
+    }
+
+    private static long string(final String value) {
+        long hash = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long number(final String value) {
+        return ~string(value);
+    }
+
+    private static long mix(long hash) { // murmur3 finalizer
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Get the top-level properties whose hashes differ between two descriptors.
+     *
+     * @param original the hashes of the original descriptor's properties
+     * @param modified the hashes of the modified descriptor's properties
+     * @return the changed property names, sorted
+     */
+    static Set<String> changedProperties(final Map<String, Long> original, final Map<String, Long> modified) {
+        final Set<String> changed = new TreeSet<>();
+        for (final Map.Entry<String, Long> property : original.entrySet()) {
+            if (!property.getValue().equals(modified.get(property.getKey()))) {
+                changed.add(property.getKey());
+            }
+        }
+        for (final String property : modified.keySet()) {
+            if (!original.containsKey(property)) {
+                changed.add(property);
+            }
+        }
+        changed.removeAll(IGNORED);
+        return changed;
+    }
+
+    /**
+     * Compare some top-level properties of two descriptors.
+     *
+     * @param original the raw JSON of the original descriptor
+     * @param modified the raw JSON of the modified descriptor
+     * @param properties the properties to compare
+     * @return every change, grouped by property
+     * @throws IOException if either descriptor could not be read
+     */
+    static List<Change> compare(final byte[] original, final byte[] modified, final Set<String> properties) throws IOException {
+        final Map<String, Node> before = readProperties(original, properties);
+        final Map<String, Node> after = readProperties(modified, properties);
+        final List<Change> changes = new ArrayList<>();
+        for (final String property : properties) {
+            compare(changes, property, property, before.get(property), after.get(property));
+        }
+        return changes;
+    }
+
+    private static Map<String, Node> readProperties(final byte[] descriptor, final Set<String> properties) throws IOException {
+        final Map<String, Node> result = new HashMap<>();
+        try (final JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(descriptor), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if (properties.contains(name)) {
+                    result.put(name, read(reader));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        return result;
+    }
+
+    private static void compare(final List<Change> changes, final String property, final String path, final @Nullable Node before, final @Nullable Node after) {
+        if (before != null && after != null && before.hash() == after.hash()) {
+            return;
+        }
+
+        if (before instanceof ObjectNode original && after instanceof ObjectNode modified) {
+            final Set<String> names = new TreeSet<>(original.members().keySet());
+            names.addAll(modified.members().keySet());
+            for (final String name : names) {
+                compare(changes, property, path + '.' + name, original.members().get(name), modified.members().get(name));
+            }
+        } else if (before instanceof ArrayNode original && after instanceof ArrayNode modified) {
+            compareArrays(changes, property, path, original.elements(), modified.elements());
+        } else {
+            changes.add(new Change(property, path, before == null ? null : render(before), after == null ? null : render(after)));
+        }
+    }
+
+    private static void compareArrays(final List<Change> changes, final String property, final String path, final List<Node> original, final List<Node> modified) {
+        if (original.size() == modified.size()) { // most likely edited in place
+            for (int i = 0; i < original.size(); i++) {
+                compare(changes, property, path + '[' + i + ']', original.get(i), modified.get(i));
+            }
+            return;
+        }
+
+        // otherwise match up equal elements, reporting the rest as removed or added
+        final Map<Long, Deque<Integer>> unmatched = new HashMap<>();
+        for (int i = 0; i < modified.size(); i++) {
+            unmatched.computeIfAbsent(modified.get(i).hash(), $ -> new ArrayDeque<>()).add(i);
+        }
+        final Set<Integer> matched = new HashSet<>();
+        for (int i = 0; i < original.size(); i++) {
+            final @Nullable Deque<Integer> candidates = unmatched.get(original.get(i).hash());
+            if (candidates != null && !candidates.isEmpty()) {
+                matched.add(candidates.poll());
+            } else {
+                changes.add(new Change(property, path + '[' + i + ']', render(original.get(i)), null));
+            }
+        }
+        for (int i = 0; i < modified.size(); i++) {
+            if (!matched.contains(i)) {
+                changes.add(new Change(property, path + '[' + i + ']', null, render(modified.get(i))));
+            }
+        }
+    }
+
+    private static String render(final Node node) {
+        final StringBuilder out = new StringBuilder();
+        render(out, node);
+        if (out.length() > MAX_VALUE_LENGTH) {
+            out.setLength(MAX_VALUE_LENGTH - 1);
+            out.append('…');
+        }
+        // keep values inside their code spans
+        return out.toString().replace('`', '\'');
+    }
+
+    private static void render(final StringBuilder out, final Node node) {
+        if (out.length() > MAX_VALUE_LENGTH) {
+            return;
+        }
+        switch (node) {
+            case Scalar scalar -> out.append(scalar.json());
+            case ObjectNode object -> {
+                out.append('{');
+                boolean first = true;
+                for (final Map.Entry<String, Node> member : object.members().entrySet()) {
+                    out.append(first ? "" : ",").append(quote(member.getKey())).append(':');
+                    render(out, member.getValue());
+                    first = false;
+                }
+                out.append('}');
+            }
+            case ArrayNode array -> {
+                out.append('[');
+                for (int i = 0; i < array.elements().size(); i++) {
+                    out.append(i == 0 ? "" : ",");
+                    render(out, array.elements().get(i));
+                }
+                out.append(']');
+            }
+        }
+    }
+
+    private static String quote(final String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    /**
+     * Group changes into report sections, one per top-level property.
+     *
+     * @param changes the changes, grouped by property
+     * @param none the text to show in place of a missing value
+     * @return section titles mapped to their lines
+     */
+    static Map<String, List<String>> sections(final List<Change> changes, final String none) {
+        final Map<String, List<String>> sections = new LinkedHashMap<>();
+        final Map<String, Integer> omitted = new LinkedHashMap<>();
+        for (final Change change : changes) {
+            final List<String> lines = sections.computeIfAbsent(title(change.property()), $ -> new ArrayList<>());
+            if (lines.size() == MAX_CHANGES) {
+                omitted.merge(title(change.property()), 1, Integer::sum);
+                continue;
+            }
+            lines.add("- `" + change.path() + "`: "
+                + (change.before() == null ? none : '`' + change.before() + '`')
+                + " -> "
+                + (change.after() == null ? none : '`' + change.after() + '`'));
+        }
+        for (final Map.Entry<String, Integer> section : omitted.entrySet()) {
+            sections.get(section.getKey()).add("- and " + section.getValue() + " more changes");
+        }
+        return sections;
+    }
+
+    /**
+     * Turn a property name into a section title, such as {@code mainClass} into {@code Main Class}.
+     */
+    private static String title(final String property) {
+        final StringBuilder title = new StringBuilder(property.length() + 4);
+        for (int i = 0; i < property.length(); i++) {
+            final char c = property.charAt(i);
+            if (i == 0) {
+                title.append(Character.toUpperCase(c));
+            } else if (Character.isUpperCase(c) && !Character.isUpperCase(property.charAt(i - 1))) {
+                title.append(' ').append(c);
+            } else {
+                title.append(c);
+            }
+        }
+        return title.toString();
+    }
+
+}
@@ -1,39 +1,26 @@
 package ca.stellardrift.mcannouncer;
 
 import ca.stellardrift.mcannouncer.util.Signals;
-import ca.stellardrift.mcannouncer.util.WebhookUtil;
-import club.minnced.discord.webhook.WebhookClient;
-import club.minnced.discord.webhook.WebhookClientBuilder;
 import club.minnced.discord.webhook.send.AllowedMentions;
 import club.minnced.discord.webhook.send.WebhookEmbed;
 import club.minnced.discord.webhook.send.WebhookEmbedBuilder;
-import club.minnced.discord.webhook.send.WebhookMessage;
 import club.minnced.discord.webhook.send.WebhookMessageBuilder;
 import com.google.gson.JsonParseException;
-import okhttp3.Cache;
-import okhttp3.OkHttpClient;
 import org.checkerframework.checker.nullness.qual.Nullable;
-import org.spongepowered.gradle.vanilla.internal.util.Pair;
 import org.tinylog.Logger;
 
 import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.nio.file.Path;
-import java.time.Instant;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import static java.util.Objects.requireNonNull;
@@ -48,11 +35,15 @@ public class VersionAnnouncer implements AutoCloseable {
     /**
      * Entry point for the CLI
      *
-     * @param args arguments, usage: {@code <on-disk cache> <webhook URL>}
+     * @param args arguments, usage: {@code <config.json file>}, or {@code history <config.json file> [<from> [<to>]]}
      */
     public static void main(final String[] args) {
+        if (args.length >= 1 && args[0].equals(HistoryCommand.NAME)) {
+            System.exit(HistoryCommand.run(args));
+            return;
+        }
         if (args.length != 1) {
-            Logger.error("Incomplete arguments. Usage: ./version-announcer <config.json file>");
+            Logger.error("Incomplete arguments. Usage: ./version-announcer <config.json file>, or {}", HistoryCommand.USAGE);
             System.exit(1);
         }
         final Path configFile = Path.of(args[0]);
@@ -65,22 +56,39 @@ public class VersionAnnouncer implements AutoCloseable {
             return;
         }
 
-        new VersionAnnouncer(config)
-            .start();
+        try {
+            new VersionAnnouncer(config)
+                .start();
+        } catch (final IOException ex) {
+            Logger.error(ex, "Failed to open cache in {}", config.cacheDir());
+            System.exit(1);
+        }
     }
 
     private final Config config;
-    private volatile ScheduledExecutorService scheduler;
+    private volatile ExecutionModel executors;
     private HttpClient http;
+    private DescriptorCache descriptors;
+    private ComparisonMemo comparisons;
+    private @Nullable JarCache jars;
+    private DescriptorStore store;
+    private ManifestHistory history;
+    private FetchScheduler fetches;
+    private InFlightRequests requests;
+    private ManifestFetcher manifests;
+    private PollPipeline pipeline;
+    private PollScheduler poller;
+    private CacheCollector collector;
+    private Prewarmer prewarmer;
+    private EmbedPacker packer;
+    private @Nullable MetricsServer metricsServer;
     private List<WebhookEndpoint> discordSender;
 
-    private CompletableFuture<ManifestState> last;
-
-    record WebhookEndpoint(String name, @Nullable Set<String> tags, WebhookClient client) {
+    record WebhookEndpoint(String name, @Nullable Set<String> tags, WebhookDelivery delivery) {
         public WebhookEndpoint {
             requireNonNull(name, "name");
             tags = tags == null ? Set.of() : Set.copyOf(tags);
-            requireNonNull(client, "client");
+            requireNonNull(delivery, "delivery");
         }
 
         boolean isTagged(final @Nullable String tag) {
@@ -88,33 +96,67 @@ public class VersionAnnouncer implements AutoCloseable {
         }
     }
 
-    public void start() {
-        this.scheduler = Executors.newScheduledThreadPool(4);
+    public void start() throws IOException {
+        this.store = DescriptorStore.open(this.config.cacheDir());
+        this.history = ManifestHistory.open(this.config.cacheDir());
+        this.executors = ExecutionModel.create(this.config.executionMode());
         this.http = HttpClient.newBuilder()
-            .executor(this.scheduler)
+            .executor(this.executors.io())
             .build();
 
-        this.last = ManifestState.create(this.http, this.config.cacheDir(), true); // initialize state
+        this.descriptors = new DescriptorCache(this.config.descriptorCacheSize());
+        this.requests = new InFlightRequests();
+        this.packer = new EmbedPacker(this.config.changelogUrlFormat());
+        this.fetches = new FetchScheduler(this.config.polling().descriptorConcurrency(), this.config.polling().descriptorTimeout());
+        final DescriptorLoader loader = new DescriptorLoader(this.http, this.store, this.descriptors, this.fetches, this.executors.io(), this.requests);
+        this.comparisons = new ComparisonMemo(this.config.comparisonCacheSize());
+        this.comparisons.load(this.comparisonsFile());
+        this.jars = this.config.jars().enabled()
+            ? new JarCache(this.http, this.config.cacheDir().resolve("jars"), this.config.jars(), this.executors.io(), this.requests)
+            : null;
+        this.manifests = new ManifestFetcher(this.http, this.config.cacheDir(), loader, this.comparisons, this.jars, this.history, this.requests, this.executors.io());
+        this.pipeline = new PollPipeline(
+            this.manifests,
+            this.requests,
+            this.fetches,
+            this.config.polling(),
+            this.executors.io(),
+            this.manifests.fetch(true, InFlightRequests.NO_CYCLE), // initialize state
+            this::renderReports,
+            this::sendWebhook
+        );
+        this.prewarmer = new Prewarmer(this.config.prewarm(), this.config.polling().descriptorConcurrency());
+        // in the background, so polling can begin straight away
+        this.pipeline.current()
+            .thenCompose(this.prewarmer::run)
+            .exceptionally(error -> {
+                Logger.warn(error, "Failed to pre-warm version descriptors");
+                return null;
+            });
         this.discordSender = new ArrayList<>();
-        final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .addNetworkInterceptor(chain ->
-                chain.proceed(
-                    chain.request().newBuilder()
-                        .header("User-Agent", USER_AGENT)
-                        .build()
-                ))
-            .cache(new Cache(this.config.cacheDir().resolve("okhttp-cache").toFile(), 100 * 1024 * 1024 /* 100 mb */))
-            .build();
-
         for (final var entry : this.config.endpoints().entrySet()) {
-            final WebhookClient client = new WebhookClientBuilder(entry.getValue().url().toString())
-                .setDaemon(true)
-                .setAllowedMentions(AllowedMentions.none())
-                .setExecutorService(this.scheduler)
-                .setHttpClient(httpClient)
-                .build();
+            final WebhookDelivery delivery = new WebhookDelivery(
+                entry.getKey(),
+                entry.getValue().url(),
+                this.http,
+                this.executors.webhooks(),
+                this.config.delivery()
+            );
 
-            this.discordSender.add(new WebhookEndpoint(entry.getKey(), entry.getValue().tags(), client));
+            this.discordSender.add(new WebhookEndpoint(entry.getKey(), entry.getValue().tags(), delivery));
+        }
+
+        if (this.config.metrics().enabled()) {
+            try {
+                this.metricsServer = MetricsServer.start(
+                    this.config.metrics().address(),
+                    this.config.metrics().path(),
+                    this.registerMetrics(),
+                    this.executors.io()
+                );
+            } catch (final IOException ex) {
+                Logger.error(ex, "Failed to start metrics server, continuing without metrics");
+            }
         }
 
         // Shut down gracefully on ctrl + c
@@ -129,7 +171,7 @@ public class VersionAnnouncer implements AutoCloseable {
 
         Logger.info("Broadcasting to endpoints: {}", this.config.endpoints().keySet());
 
-        this.sendWebhook(new WebhookMessageBuilder()
+        this.sendWebhook(RenderedMessage.of(new WebhookMessageBuilder()
             .setUsername("version-announcer")
             .addEmbeds(new WebhookEmbedBuilder()
                 .setTitle(new WebhookEmbed.EmbedTitle("Successfully started", null))
@@ -141,7 +183,7 @@ public class VersionAnnouncer implements AutoCloseable {
                 .build()
             )
             // .content("Successfully started!")
-            .build(), EndpointTag.ADMIN);
+            .build()), EndpointTag.ADMIN, 0);
 
         /*this.last
             .thenCompose(state -> state.compareVersions("1.16.5", "1.17"))
@@ -156,265 +198,226 @@ public class VersionAnnouncer implements AutoCloseable {
                 return null;
         });*/
 
-        this.scheduler.scheduleAtFixedRate(() -> {
-            try {
-                this.sendUpdate();
-            } catch (final Exception ex) {
-                this.sendError(ex);
-            }
-        }, 0, 30, TimeUnit.SECONDS);
+        this.poller = new PollScheduler(this.executors.timer(), this.config.polling(), this.pipeline::run);
+        this.poller.start();
+
+        this.collector = new CacheCollector(
+            this.store,
+            this.config.cacheDir(),
+            this.config.cache(),
+            this.executors.maintenance(),
+            this::referencedDescriptors,
+            this.pipeline::isRunning
+        );
+        this.collector.start();
+        this.executors.maintenance().scheduleWithFixedDelay(this::saveComparisons, 5, 5, TimeUnit.MINUTES);
 
         Logger.info("version-announcer successfully initialized!");
     }
 
-    private void sendUpdate() {
-        Logger.debug("Beginning update check at {}", DateTimeFormatter.ISO_INSTANT.format(Instant.now().truncatedTo(ChronoUnit.SECONDS)));
-        // the states
-        final var last = this.last.handle((res, error) -> {
-            if (error != null) this.sendError(error);
-            return res;
-        });
-        final var nextFuture = ManifestState.create(this.http, this.config.cacheDir(), false);
-        final var next = nextFuture.handle((res, error) -> {
-            if (error != null) {
-                this.sendError(error);
-            } else {
-                this.last = nextFuture; // update on success
-            }
-            return res;
-        });
+    private MetricsRegistry registerMetrics() {
+        final MetricsRegistry metrics = new MetricsRegistry();
 
-        last.thenCombine(next, (lastManifest, nextManifest) -> {
-            if (lastManifest == null || nextManifest == null) {
-                return null; // error captured earlier
-            }
-            return lastManifest.compare(nextManifest);
-        }).handleAsync((result, error) -> {
-                if (error != null) {
-                    this.sendError(error);
-                } else if (result != null) {
-                    if (result.size() > 0) {
-                        Logger.info("Successfully detected {} changes", result.size());
-                    }
+        metrics.counter("announcer_poll_cycles_total", "Poll cycles started", this.pipeline::cycles);
+        metrics.counter("announcer_poll_cycle_failures_total", "Poll cycles that failed", this.pipeline::failedCycles);
+        metrics.histogram("announcer_poll_cycle_seconds", "Time taken by each poll cycle", this.pipeline.cycleLatency());
+        for (final PollPipeline.Stage stage : PollPipeline.Stage.values()) {
+            metrics.histogram("announcer_poll_stage_seconds", "Time taken by each stage of a poll cycle", this.pipeline.stageLatency(stage), "stage", stage.name().toLowerCase(Locale.ROOT));
+        }
+        metrics.gauge("announcer_poll_interval_seconds", "Delay before the next poll", () -> this.poller == null ? 0 : this.poller.effectiveInterval().toMillis() / 1000d);
+        metrics.histogram("announcer_diff_reports", "Reports produced by each manifest diff", this.pipeline.diffSize());
+        metrics.histogram("announcer_detection_to_delivery_seconds", "Time from fetching a changed manifest to delivering its announcements", this.pipeline.detectionToDelivery());
+
+        metrics.counter("announcer_manifest_responses_total", "Manifest responses received", this.manifests::notModifiedResponses, "result", "not_modified");
+        metrics.counter("announcer_manifest_responses_total", "Manifest responses received", this.manifests::modifiedResponses, "result", "modified");
+        metrics.counter("announcer_manifest_received_bytes_total", "Bytes of manifest bodies received", this.manifests::bytesReceived);
+        metrics.gauge("announcer_manifest_history_snapshots", "Distinct manifests recorded in the history", this.history::size);
+        metrics.gauge("announcer_http_requests_in_flight", "Outgoing HTTP requests awaiting a response", this.requests::size);
+
+        metrics.counter("announcer_descriptor_cache_requests_total", "Descriptor cache lookups", this.descriptors::hits, "result", "hit");
+        metrics.counter("announcer_descriptor_cache_requests_total", "Descriptor cache lookups", this.descriptors::misses, "result", "miss");
+        metrics.counter("announcer_descriptor_cache_evictions_total", "Descriptors evicted from the cache", this.descriptors::evictions);
+        metrics.gauge("announcer_descriptor_cache_entries", "Descriptors held in the cache", this.descriptors::size);
+        metrics.gauge("announcer_descriptor_cache_weight_bytes", "Size of the descriptors held in the cache", this.descriptors::weight);
+        metrics.gauge("announcer_descriptor_loads_queued", "Descriptor loads waiting for a free slot", this.fetches::queued);
+        metrics.gauge("announcer_descriptor_loads_running", "Descriptor loads in progress", this.fetches::running);
+        metrics.counter("announcer_descriptor_load_timeouts_total", "Descriptor loads abandoned after their timeout", this.fetches::timeouts);
+        metrics.gauge("announcer_prewarm_descriptors", "Descriptors selected for loading at startup", this.prewarmer::total);
+        metrics.gauge("announcer_prewarm_finished_descriptors", "Startup descriptor loads finished, by result", this.prewarmer::loaded, "result", "loaded");
+        metrics.gauge("announcer_prewarm_finished_descriptors", "Startup descriptor loads finished, by result", this.prewarmer::failed, "result", "failed");
+        metrics.counter("announcer_comparison_cache_requests_total", "Comparison cache lookups", this.comparisons::hits, "result", "hit");
+        metrics.counter("announcer_comparison_cache_requests_total", "Comparison cache lookups", this.comparisons::misses, "result", "miss");
+        metrics.gauge("announcer_comparison_cache_entries", "Comparisons remembered", this.comparisons::size);
+        if (this.jars != null) {
+            final JarCache jars = this.jars;
+            metrics.counter("announcer_jar_requests_total", "Jars requested for comparison", jars::hits, "result", "hit");
+            metrics.counter("announcer_jar_requests_total", "Jars requested for comparison", jars::downloaded, "result", "downloaded");
+            metrics.counter("announcer_jar_downloaded_bytes_total", "Bytes of jars downloaded for comparison", jars::downloadedBytes);
+        }
+        metrics.gauge("announcer_descriptor_store_entries", "Descriptors in the on-disk store", this.store::size);
+        metrics.gauge("announcer_descriptor_store_bytes", "Compressed size of the on-disk store", this.store::packSize);
+        metrics.counter("announcer_cache_collections_total", "Cache garbage collections completed", () -> this.collector == null ? 0 : this.collector.collections());
+        metrics.counter("announcer_cache_evicted_descriptors_total", "Descriptors removed from the on-disk store", () -> this.collector == null ? 0 : this.collector.evicted());
+        metrics.counter("announcer_cache_reclaimed_bytes_total", "Disk space freed by cache garbage collection", () -> this.collector == null ? 0 : this.collector.reclaimedBytes());
 
-                    for (int i = 0 ; i < result.size(); i += 10) {
-                        final int maxIdx = Math.min(i + 10, result.size());
-                        final List<CompletableFuture<ComparisonReport>> reports = result.subList(i, maxIdx);
-                        final CompletableFuture<?> all = CompletableFuture.allOf(reports.toArray(new CompletableFuture<?>[0]));
-                        final int startIdx = i;
-                        all.handle(($, reportError) -> {
-                            if (reportError != null) {
-                                Logger.error(reportError, "Failed to prepare report batch from {} to {}", startIdx, maxIdx);
-                                return null;
-                            }
-                            final var completedReports = new ArrayList<ComparisonReport>(reports.size());
-                            for (final var reportFuture : reports) {
-                                try {
-                                    completedReports.add(reportFuture.get());
-                                } catch (final InterruptedException | ExecutionException ex) {
-                                    throw new CompletionException(ex);
-                                }
-                            }
-
-                            try {
-                                this.sendReport(completedReports);
-                            } catch (final URISyntaxException ex) {
-                                Logger.error(ex, "Failed to send report batch from {} to {}", startIdx, maxIdx);
-                            }
-                            return null;
-                        });
-                    }
-                    Logger.debug("Completed update check with {} changes", result.size());
-                }
-                return null;
-            }, this.scheduler);
+        for (final WebhookEndpoint endpoint : this.discordSender) {
+            final WebhookDelivery delivery = endpoint.delivery();
+            final String name = endpoint.name();
+            metrics.histogram("announcer_webhook_send_seconds", "Time waiting for each webhook response", delivery.sendLatency(), "endpoint", name);
+            metrics.counter("announcer_webhook_messages_total", "Webhook messages by outcome", delivery::sent, "endpoint", name, "result", "sent");
+            metrics.counter("announcer_webhook_messages_total", "Webhook messages by outcome", delivery::failed, "endpoint", name, "result", "failed");
+            metrics.counter("announcer_webhook_rate_limited_total", "Webhook requests rejected by rate limits", delivery::rateLimited, "endpoint", name);
+            metrics.gauge("announcer_webhook_queue_depth", "Messages waiting for delivery", delivery::queueDepth, "endpoint", name);
+            metrics.gauge("announcer_webhook_circuit_open", "Whether delivery is suspended after repeated failures", () -> delivery.isCircuitOpen() ? 1 : 0, "endpoint", name);
+        }
+
+        for (final var queue : this.executors.queueDepths().entrySet()) {
+            metrics.gauge("announcer_executor_queue_depth", "Tasks waiting to run", queue.getValue()::getAsInt, "executor", queue.getKey());
+        }
+
+        return metrics;
     }
 
-    private void sendError(final Throwable thr) {
-        Logger.error(thr, "Error occurred while trying to prepare status update");
+    private Path comparisonsFile() {
+        return this.config.cacheDir().resolve("comparisons.json");
     }
 
-    // receives a list of max length 10
-    private void sendReport(final List<ComparisonReport> reports) throws URISyntaxException {
-        if (reports.size() > WebhookMessage.MAX_EMBEDS) {
-            throw new IllegalArgumentException("Received a list of length >10");
+    private void saveComparisons() {
+        try {
+            this.comparisons.save(this.comparisonsFile());
+        } catch (final IOException ex) {
+            Logger.error(ex, "Failed to save comparison cache");
         }
+    }
 
-        WebhookMessageBuilder builder = new WebhookMessageBuilder()
-            .setAllowedMentions(AllowedMentions.none());
-        int totalLength = 0;
-        for (final ComparisonReport report : reports) {
-            if (!report.onlyWhenSectionsPresent() || !report.sections().isEmpty()) {
-                final WebhookEmbed embed = this.asEmbed(report);
-                if (totalLength + WebhookUtil.totalContentLength(embed) > WebhookUtil.MAX_EMBED_LENGTH) {
-                    this.sendWebhook(builder.build());
-                    builder = new WebhookMessageBuilder()
-                        .setAllowedMentions(AllowedMentions.none());
-                    totalLength = 0;
-                }
-                builder.addEmbeds(this.asEmbed(report));
-                totalLength += WebhookUtil.totalContentLength(embed);
-            }
+    /**
+     * Get every descriptor a poll cycle may need to compare.
+     *
+     * @return descriptor hashes, or {@code null} if no manifest has been loaded yet
+     */
+    private @Nullable Set<String> referencedDescriptors() {
+        final @Nullable ManifestState compared = this.pipeline.current().exceptionally(error -> null).getNow(null);
+        final @Nullable ManifestState fetched = this.manifests.current();
+        if (compared == null && fetched == null) {
+            return null;
         }
 
-        if (totalLength == 0) {
-            return;
+        final Set<String> referenced = new HashSet<>();
+        if (compared != null) {
+            referenced.addAll(compared.descriptorHashes());
         }
+        if (fetched != null && fetched != compared) {
+            referenced.addAll(fetched.descriptorHashes());
+        }
+        return referenced;
+    }
 
+    private void sendError(final Throwable thr) {
+        Logger.error(thr, "Error occurred while trying to prepare status update");
+    }
 
-        /* todo: buttons don't seem to work
-        // populate buttons (as part of message components)
-        // only link buttons work now, since we don't have anywhere to listen to interaction responses
-        final List<MessageComponent.Button> buttons = new ArrayList<>();
-        if (reports.size() == 1) {
-            final var report = reports.get(0);
-            for (final Pair<String, URL> link : report.links()) {
-                buttons.add(MessageComponent.buttonBuilder()
-                    .style(ButtonStyle.LINK)
-                    .label(link.first())
-                    .url(link.second())
-                    .build()
-                );
-            }
-        } else {
-            for (final ComparisonReport report : reports) {
+    private List<RenderedMessage> renderReports(final List<ComparisonReport> reports, final long cycle) {
+        final List<RenderedMessage> messages = new ArrayList<>();
+        for (final List<WebhookEmbed> embeds : this.packer.pack(reports, cycle)) {
+            final WebhookMessageBuilder builder = new WebhookMessageBuilder()
+                .setAllowedMentions(AllowedMentions.none())
+                .addEmbeds(embeds);
+
+            /* todo: buttons don't seem to work
+            // populate buttons (as part of message components)
+            // only link buttons work now, since we don't have anywhere to listen to interaction responses
+            final List<MessageComponent.Button> buttons = new ArrayList<>();
+            if (reports.size() == 1) {
+                final var report = reports.get(0);
                 for (final Pair<String, URL> link : report.links()) {
                     buttons.add(MessageComponent.buttonBuilder()
                         .style(ButtonStyle.LINK)
-                        .label(report.versionId() + " " + link.first())
+                        .label(link.first())
                         .url(link.second())
                         .build()
                     );
                 }
-            }
-        }
-
-        final int componentsToSend = Math.min(MessageComponent.ActionRow.MAX_CHILDREN * Webhook.MAX_COMPONENTS, buttons.size());
-        for (int i = 0; i < componentsToSend; i += MessageComponent.ActionRow.MAX_CHILDREN) {
-            builder.addComponent(
-                MessageComponent.actionRowBuilder()
-                    .components(buttons.subList(i, Math.min(buttons.size(), componentsToSend)))
-                    .build()
-            );
-        }*/
-
-        this.sendWebhook(builder.build());
-    }
-
-    private WebhookEmbed asEmbed(final ComparisonReport report) {
-        final WebhookEmbedBuilder builder = new WebhookEmbedBuilder();
-
-        final StringBuilder description = new StringBuilder(report.description());
-
-        if (!description.isEmpty() && !report.links().isEmpty()) {
-            description.append("\n\n**Links:**\n");
-            boolean first = true;
-            for (final Pair<String, URL> link : report.links()) {
-                if (!first) {
-                    description.append(" | ");
+            } else {
+                for (final ComparisonReport report : reports) {
+                    for (final Pair<String, URL> link : report.links()) {
+                        buttons.add(MessageComponent.buttonBuilder()
+                            .style(ButtonStyle.LINK)
+                            .label(report.versionId() + " " + link.first())
+                            .url(link.second())
+                            .build()
+                        );
+                    }
                 }
-                first = false;
-                description.append("[").append(link.first()).append("](").append(link.second()).append(')');
             }
-        }
-
-        builder
-            .setTitle(new WebhookEmbed.EmbedTitle("Minecraft " + report.versionId(), config.changelogUrlFormat().formatted(report.versionId())))
-            .setColor(report.colour())
-            .setDescription(description.toString())
-            .setFooter(new WebhookEmbed.EmbedFooter("Last updated", null));
-
-        if (report.iconUrl() != null) {
-            builder.setThumbnailUrl(report.iconUrl());
-        }
 
-        if (report.time() != null) {
-            builder.setTimestamp(report.time());
-        }
-
-        for (final var entry : report.sections().entrySet()) {
-            int count = 0;
-            final StringBuilder value = new StringBuilder();
-            int chars = 0;
-            boolean added = false;
-            for (final var it = entry.getValue().iterator(); it.hasNext();) {
-                final String line = it.next();
-                chars += line.length() + 1;
-                if (chars >= WebhookUtil.MAX_FIELD_VALUE_LENGTH) {
-                    builder.addField(
-                        new WebhookEmbed.EmbedField(
-                            false,
-                            count == 0 ? entry.getKey() : entry.getKey() + "(cont'd " + count + ')',
-                            value.toString()
-                        )
-                    );
-                    added = true;
-                    count++;
-                    chars = 0;
-                    // flush the buffer
-                    value.delete(0, value.length());
-                }
-                value.append(line);
-                if (it.hasNext()) {
-                    value.append('\n');
-                }
-            }
-            // flush the buffer
-            if (!value.isEmpty()) {
-                builder.addField(
-                    new WebhookEmbed.EmbedField(
-                        false,
-                        count == 0 ? entry.getKey() : entry.getKey() + "(cont'd " + count + ')',
-                        value.toString()
-                    )
+            final int componentsToSend = Math.min(MessageComponent.ActionRow.MAX_CHILDREN * Webhook.MAX_COMPONENTS, buttons.size());
+            for (int i = 0; i < componentsToSend; i += MessageComponent.ActionRow.MAX_CHILDREN) {
+                builder.addComponent(
+                    MessageComponent.actionRowBuilder()
+                        .components(buttons.subList(i, Math.min(buttons.size(), componentsToSend)))
+                        .build()
                 );
-                added = true;
-            }
-            if (!added) {
-                Logger.warn("Field '{}' in embed for version '{}' has empty value", entry.getKey(), report.versionId());
-            }
-        }
+            }*/
 
-        return builder.build();
+            messages.add(RenderedMessage.of(builder.build()));
+        }
+        return messages;
     }
 
-    private CompletableFuture<?> sendWebhook(final WebhookMessage message) {
-        return this.sendWebhook(message, null);
+    private CompletableFuture<?> sendWebhook(final RenderedMessage message, final long cycle) {
+        return this.sendWebhook(message, null, cycle);
     }
 
-    private CompletableFuture<?> sendWebhook(final WebhookMessage message, final @Nullable String tag) {
+    private CompletableFuture<?> sendWebhook(final RenderedMessage message, final @Nullable String tag, final long cycle) {
         final List<CompletableFuture<?>> responses = new ArrayList<>();
         for (final var endpoint : this.discordSender) {
             if (!endpoint.isTagged(tag)) {
                 continue;
             }
-            responses.add(endpoint.client().send(message));
+            responses.add(endpoint.delivery().send(message.payload(), cycle).exceptionally(error -> {
+                Logger.error(error, "Failed to deliver message to webhook {}", endpoint.name());
+                return null;
+            }));
         }
         return CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0]));
     }
 
     @Override
     public void close() {
+        if (this.poller != null) {
+            this.poller.stop();
+        }
+        if (this.collector != null) {
+            this.collector.stop();
+        }
+        if (this.metricsServer != null) {
+            this.metricsServer.close();
+            this.metricsServer = null;
+        }
         this.http = null;
-        final ScheduledExecutorService scheduler = this.scheduler;
-        this.scheduler = null;
-        if (scheduler != null) {
-            scheduler.shutdown();
-            boolean success;
+        final ExecutionModel executors = this.executors;
+        this.executors = null;
+        if (executors != null) {
+            executors.close();
+        }
+        if (this.comparisons != null) {
+            this.saveComparisons();
+        }
+        if (this.store != null) {
             try {
-                success = scheduler.awaitTermination(10, TimeUnit.SECONDS);
-            } catch (final InterruptedException ex) {
-                success = false;
-            }
-
-            if (!success) {
-                Logger.error("Failed to shut down executor within 10 seconds, forcibly terminating now.");
-                scheduler.shutdownNow();
+                this.store.close();
+            } catch (final IOException ex) {
+                Logger.error(ex, "Failed to close descriptor store");
             }
+            this.store = null;
         }
-
-        for (final WebhookEndpoint endpoint : this.discordSender) {
-            endpoint.client().close();
+        if (this.history != null) {
+            try {
+                this.history.close();
+            } catch (final IOException ex) {
+                Logger.error(ex, "Failed to close manifest history");
+            }
+            this.history = null;
         }
     }
 
@@ -0,0 +1,313 @@
+package ca.stellardrift.mcannouncer;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivers messages to a single Discord webhook, in order.
+ *
+ * <p>Each endpoint has its own bounded queue, so a slow or failing endpoint
+ * cannot hold up any other. Sends are paced according to the rate limit
+ * headers Discord returns, retried with exponential backoff, and suspended
+ * entirely by a circuit breaker while the endpoint keeps failing.</p>
+ */
+final class WebhookDelivery {
+    private final String name;
+    private final URI url;
+    private final HttpClient client;
+    private final ScheduledExecutorService scheduler;
+    private final Config.Delivery config;
+
+    private final Queue<Pending> queue = new ArrayDeque<>(); // guarded by this
+    private boolean draining; // guarded by this
+
+    // rate limit state, only touched by the drain loop
+    private long blockedUntil; // System.nanoTime
+    private int consecutiveFailures;
+    private volatile long circuitOpenUntil; // System.nanoTime, 0 when closed
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final Histogram sendLatency = Histogram.latency();
+
+    private static final class Pending {
+        final byte[] payload;
+        final long cycle;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        int attempts;
+
+        Pending(final byte[] payload, final long cycle) {
+            this.payload = payload;
+            this.cycle = cycle;
+        }
+    }
+
+    WebhookDelivery(
+        final String name,
+        final URI url,
+        final HttpClient client,
+        final ScheduledExecutorService scheduler,
+        final Config.Delivery config
+    ) {
+        this.name = name;
+        this.url = url;
+        this.client = client;
+        this.scheduler = scheduler;
+        this.config = config;
+    }
+
+    String name() {
+        return this.name;
+    }
+
+    /**
+     * Queue a message for delivery.
+     *
+     * @param payload the serialized JSON message body
+     * @param cycle the poll cycle the message was produced by
+     * @return a future completing once the message has been accepted by Discord
+     */
+    CompletableFuture<Void> send(final byte[] payload, final long cycle) {
+        if (this.isCircuitOpen()) {
+            return CompletableFuture.failedFuture(new IOException("Delivery to webhook " + this.name + " is suspended after repeated failures"));
+        }
+
+        final Pending pending = new Pending(payload, cycle);
+        final boolean start;
+        synchronized (this) {
+            if (this.queue.size() >= this.config.queueCapacity()) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("Delivery queue for webhook " + this.name + " is full"));
+            }
+            this.queue.add(pending);
+            start = !this.draining;
+            this.draining = true;
+        }
+
+        if (start) {
+            this.schedule(0);
+        }
+        return pending.result;
+    }
+
+    private void schedule(final long delayNanos) {
+        try {
+            this.scheduler.schedule(this::drain, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (final RejectedExecutionException ex) {
+            // shutting down, fail everything still queued
+            synchronized (this) {
+                this.draining = false;
+                for (Pending pending; (pending = this.queue.poll()) != null;) {
+                    pending.result.completeExceptionally(ex);
+                }
+            }
+        }
+    }
+
+    private void drain() {
+        final @Nullable Pending next;
+        synchronized (this) {
+            next = this.queue.peek();
+            if (next == null) {
+                this.draining = false;
+                return;
+            }
+        }
+
+        final long wait = this.blockedUntil - System.nanoTime();
+        if (wait > 0) {
+            this.schedule(wait);
+            return;
+        }
+
+        next.attempts++;
+        final PipelineEvents.WebhookSend event = new PipelineEvents.WebhookSend();
+        event.begin();
+        final long start = System.nanoTime();
+        final HttpRequest request = VersionAnnouncer.requestBuilder(this.url)
+            .timeout(this.config.requestTimeout())
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(next.payload))
+            .build();
+
+        this.client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+            .whenComplete((response, error) -> {
+                this.sendLatency.observeSince(start);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.cycle = next.cycle;
+                    event.endpoint = this.name;
+                    event.status = response == null ? 0 : response.statusCode();
+                    event.bytes = next.payload.length;
+                    event.attempt = next.attempts;
+                    event.commit();
+                }
+                try {
+                    this.handle(next, response, error);
+                } catch (final RuntimeException ex) {
+                    Logger.error(ex, "Unexpected error while delivering to webhook {}", this.name);
+                    this.complete(next, ex);
+                }
+            });
+    }
+
+    private void handle(final Pending pending, final @Nullable HttpResponse<String> response, final @Nullable Throwable error) {
+        if (response != null) {
+            this.updateRateLimit(response.headers());
+        }
+
+        if (error == null && response.statusCode() / 100 == 2) {
+            this.consecutiveFailures = 0;
+            this.circuitOpenUntil = 0;
+            this.sent.increment();
+            this.complete(pending, null);
+        } else if (response != null && response.statusCode() == 429) {
+            this.rateLimited.increment();
+            final Duration retryAfter = retryAfter(response);
+            Logger.debug("Rate limited by webhook {}, retrying after {}", this.name, retryAfter);
+            this.blockedUntil = System.nanoTime() + retryAfter.toNanos();
+            this.retry(pending, retryAfter, new IOException("Rate limited by webhook " + this.name));
+        } else if (error != null || response.statusCode() >= 500) {
+            final Throwable cause = error != null ? error : new IOException("Webhook " + this.name + " responded with status " + response.statusCode());
+            final long backoff = Math.min(
+                this.config.initialBackoff().toMillis() << Math.min(pending.attempts - 1, 16),
+                this.config.maximumBackoff().toMillis()
+            );
+            this.retry(pending, Duration.ofMillis(backoff), cause);
+        } else {
+            // client errors will not be fixed by retrying
+            Logger.error("Webhook {} rejected message with status {}: {}", this.name, response.statusCode(), response.body());
+            this.complete(pending, new IOException("Webhook " + this.name + " responded with status " + response.statusCode()));
+        }
+    }
+
+    private void retry(final Pending pending, final Duration delay, final Throwable cause) {
+        if (pending.attempts >= this.config.maxAttempts()) {
+            Logger.error(cause, "Giving up on delivery to webhook {} after {} attempts", this.name, pending.attempts);
+            this.complete(pending, cause);
+        } else {
+            this.schedule(delay.toNanos());
+        }
+    }
+
+    private void complete(final Pending pending, final @Nullable Throwable error) {
+        synchronized (this) {
+            this.queue.remove(pending);
+        }
+
+        if (error == null) {
+            pending.result.complete(null);
+        } else {
+            this.failed.increment();
+            if (++this.consecutiveFailures >= this.config.breakerThreshold()) {
+                this.openCircuit();
+            }
+            pending.result.completeExceptionally(error);
+        }
+        this.schedule(0);
+    }
+
+    private void openCircuit() {
+        final Duration cooldown = this.config.breakerCooldown();
+        Logger.warn("Suspending delivery to webhook {} for {} after {} consecutive failures", this.name, cooldown, this.consecutiveFailures);
+        this.circuitOpenUntil = System.nanoTime() + cooldown.toNanos();
+        this.consecutiveFailures = 0;
+
+        // nothing queued can be delivered while the circuit is open
+        final IOException error = new IOException("Delivery to webhook " + this.name + " is suspended after repeated failures");
+        synchronized (this) {
+            for (Pending pending; (pending = this.queue.poll()) != null;) {
+                this.failed.increment();
+                pending.result.completeExceptionally(error);
+            }
+        }
+    }
+
+    private void updateRateLimit(final HttpHeaders headers) {
+        // https://discord.com/developers/docs/topics/rate-limits#header-format
+        final long remaining = headers.firstValueAsLong("X-RateLimit-Remaining").orElse(-1);
+        if (remaining == 0) {
+            final @Nullable Duration resetAfter = headers.firstValue("X-RateLimit-Reset-After")
+                .map(WebhookDelivery::parseSeconds)
+                .orElse(null);
+            if (resetAfter != null) {
+                this.blockedUntil = Math.max(this.blockedUntil, System.nanoTime() + resetAfter.toNanos());
+            }
+        }
+    }
+
+    private static Duration retryAfter(final HttpResponse<String> response) {
+        // prefer the more precise value in the body
+        try {
+            final JsonElement body = JsonParser.parseString(response.body());
+            if (body instanceof JsonObject object && object.has("retry_after")) {
+                return Duration.ofMillis((long) (object.get("retry_after").getAsDouble() * 1000));
+            }
+        } catch (final JsonParseException | IllegalStateException | NumberFormatException ignored) {
+            // fall back to header
+        }
+
+        final @Nullable Duration header = response.headers().firstValue("Retry-After")
+            .map(WebhookDelivery::parseSeconds)
+            .orElse(null);
+        return header == null ? Duration.ofSeconds(1) : header;
+    }
+
+    private static @Nullable Duration parseSeconds(final String seconds) {
+        try {
+            return Duration.ofMillis((long) (Double.parseDouble(seconds) * 1000));
+        } catch (final NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    boolean isCircuitOpen() {
+        final long openUntil = this.circuitOpenUntil;
+        return openUntil != 0 && openUntil - System.nanoTime() > 0;
+    }
+
+    synchronized int queueDepth() {
+        return this.queue.size();
+    }
+
+    long sent() {
+        return this.sent.sum();
+    }
+
+    long failed() {
+        return this.failed.sum();
+    }
+
+    long rateLimited() {
+        return this.rateLimited.sum();
+    }
+
+    /**
+     * Get the time spent waiting for each response from this webhook.
+     *
+     * @return the send latency, in seconds
+     */
+    Histogram sendLatency() {
+        return this.sendLatency;
+    }
+
+}
@@ -0,0 +1,57 @@
+package ca.stellardrift.mcannouncer.util;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes files so that readers only ever observe the old or new contents, never a partial write.
+ */
+public final class AtomicFiles {
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * Replace the contents of a file.
+     *
+     * <p>Data is written to a temporary file alongside the destination,
+     * then moved into place.</p>
+     *
+     * @param destination the file to write
+     * @param contents the new contents
+     * @throws IOException if the file could not be written
+     */
+    public static void write(final Path destination, final byte[] contents) throws IOException {
+        final Path parent = destination.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final Path temporary = Files.createTempFile(parent, destination.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, contents);
+            move(temporary, destination);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Replace a file with one that has already been completely written.
+     *
+     * <p>The source should be in the same directory as the destination, so
+     * that the move can be atomic.</p>
+     *
+     * @param source the new contents
+     * @param destination the file to replace
+     * @throws IOException if the file could not be moved
+     */
+    public static void move(final Path source, final Path destination) throws IOException {
+        try {
+            Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException ex) {
+            Files.move(source, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
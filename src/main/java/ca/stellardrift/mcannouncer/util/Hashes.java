@@ -0,0 +1,33 @@
+package ca.stellardrift.mcannouncer.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+public final class Hashes {
+    private static final HexFormat HEX = HexFormat.of();
+
+    private Hashes() {
+    }
+
+    public static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is required to be supported by every JVM", ex);
+        }
+    }
+
+    public static byte[] sha1(final byte[] data) {
+        return sha1().digest(data);
+    }
+
+    public static String toHex(final byte[] hash) {
+        return HEX.formatHex(hash);
+    }
+
+    public static byte[] fromHex(final String hash) {
+        return HEX.parseHex(hash);
+    }
+
+}
@@ -0,0 +1,93 @@
+package ca.stellardrift.mcannouncer.util;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * A body subscriber that collects a response body into memory,
+ * computing its SHA-1 hash as each chunk arrives.
+ *
+ * <p>When an expected hash is known, a body that does not match it
+ * fails the response rather than being returned.</p>
+ */
+public final class HashingBodySubscriber implements HttpResponse.BodySubscriber<HashingBodySubscriber.HashedBody> {
+    private final CompletableFuture<HashedBody> result = new CompletableFuture<>();
+    private final MessageDigest digest = Hashes.sha1();
+    private final byte @Nullable [] expectedSha1;
+    private byte[] buffer;
+    private int length;
+
+    public HashingBodySubscriber(final long expectedLength, final byte @Nullable [] expectedSha1) {
+        this.buffer = new byte[expectedLength > 0 && expectedLength < Integer.MAX_VALUE ? (int) expectedLength : 8192];
+        this.expectedSha1 = expectedSha1;
+    }
+
+    /**
+     * A body handler that collects bodies of successful responses, discarding all others.
+     *
+     * @param expectedSha1 the hash successful bodies must have, if known
+     * @return the body handler
+     */
+    public static HttpResponse.BodyHandler<HashedBody> handler(final byte @Nullable [] expectedSha1) {
+        return info -> info.statusCode() == 200
+            ? new HashingBodySubscriber(info.headers().firstValueAsLong("Content-Length").orElse(-1), expectedSha1)
+            : HttpResponse.BodySubscribers.replacing(null);
+    }
+
+    public record HashedBody(byte[] bytes, byte[] sha1) {
+    }
+
+    @Override
+    public CompletionStage<HashedBody> getBody() {
+        return this.result;
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(final List<ByteBuffer> items) {
+        for (final ByteBuffer item : items) {
+            final int remaining = item.remaining();
+            if (this.length + remaining > this.buffer.length) {
+                this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length << 1, this.length + remaining));
+            }
+            item.get(this.buffer, this.length, remaining);
+            this.digest.update(this.buffer, this.length, remaining);
+            this.length += remaining;
+        }
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        this.result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        final byte[] sha1 = this.digest.digest();
+        if (this.expectedSha1 != null && !MessageDigest.isEqual(sha1, this.expectedSha1)) {
+            this.buffer = null;
+            this.result.completeExceptionally(new IOException(
+                "Response body has hash " + Hashes.toHex(sha1) + ", but " + Hashes.toHex(this.expectedSha1) + " was expected"
+            ));
+            return;
+        }
+
+        final byte[] body = this.length == this.buffer.length ? this.buffer : Arrays.copyOf(this.buffer, this.length);
+        this.buffer = null;
+        this.result.complete(new HashedBody(body, sha1));
+    }
+
+}
@@ -1,17 +1,39 @@
 package ca.stellardrift.mcannouncer.util;
 
 import club.minnced.discord.webhook.send.WebhookEmbed;
+import club.minnced.discord.webhook.send.WebhookMessage;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
 
 public final class WebhookUtil {
-    public static final int MAX_EMBED_LENGTH = 6000;
+    // https://discord.com/developers/docs/resources/message#embed-object-embed-limits
+    public static final int MAX_EMBED_LENGTH = 6000; // across every embed in a message
+    public static final int MAX_EMBEDS = 10;
+    public static final int MAX_TITLE_LENGTH = 256;
+    public static final int MAX_DESCRIPTION_LENGTH = 4096;
+    public static final int MAX_FIELDS = 25;
+    public static final int MAX_FIELD_NAME_LENGTH = 256;
     public static final int MAX_FIELD_VALUE_LENGTH = 1024;
     private WebhookUtil() {
     }
 
-    public static int totalContentLength(WebhookEmbed embed) {
-        // max total length
+    /**
+     * Count the characters in an embed that contribute to Discord's total length limit.
+     *
+     * @param embed the embed to measure
+     * @return the length of its title, description, footer, author and fields
+     */
+    public static int totalContentLength(final WebhookEmbed embed) {
         int totalLength = 0;
-        totalLength += embed.getTitle().getText().length();
+        if (embed.getTitle() != null) {
+            totalLength += embed.getTitle().getText().length();
+        }
         if (embed.getDescription() != null) {
             totalLength += embed.getDescription().length();
         }
@@ -23,8 +45,99 @@ public final class WebhookUtil {
         }
         for (final WebhookEmbed.EmbedField field : embed.getFields()) {
             totalLength += field.getName().length();
-            totalLength += field.getName().length();
+            totalLength += field.getValue().length();
         }
         return totalLength;
     }
+
+    /**
+     * Serialize a message to the JSON body expected by Discord's execute webhook endpoint.
+     *
+     * <p>Mentions are always suppressed.</p>
+     *
+     * @param message the message to serialize
+     * @return the UTF-8 encoded JSON body
+     */
+    public static byte[] toJson(final WebhookMessage message) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            writer.beginObject();
+            if (message.getContent() != null) {
+                writer.name("content").value(message.getContent());
+            }
+            if (message.getUsername() != null) {
+                writer.name("username").value(message.getUsername());
+            }
+            if (message.getAvatarUrl() != null) {
+                writer.name("avatar_url").value(message.getAvatarUrl());
+            }
+            if (message.isTTS()) {
+                writer.name("tts").value(true);
+            }
+            writer.name("embeds").beginArray();
+            for (final WebhookEmbed embed : message.getEmbeds()) {
+                writeEmbed(writer, embed);
+            }
+            writer.endArray();
+            writer.name("allowed_mentions").beginObject()
+                .name("parse").beginArray().endArray()
+                .endObject();
+            writer.endObject();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeEmbed(final JsonWriter writer, final WebhookEmbed embed) throws IOException {
+        writer.beginObject();
+        if (embed.getTitle() != null) {
+            writer.name("title").value(embed.getTitle().getText());
+            if (embed.getTitle().getUrl() != null) {
+                writer.name("url").value(embed.getTitle().getUrl());
+            }
+        }
+        if (embed.getDescription() != null) {
+            writer.name("description").value(embed.getDescription());
+        }
+        if (embed.getTimestamp() != null) {
+            writer.name("timestamp").value(DateTimeFormatter.ISO_INSTANT.format(embed.getTimestamp()));
+        }
+        if (embed.getColor() != null) {
+            writer.name("color").value(embed.getColor());
+        }
+        if (embed.getFooter() != null) {
+            writer.name("footer").beginObject().name("text").value(embed.getFooter().getText());
+            if (embed.getFooter().getIconUrl() != null) {
+                writer.name("icon_url").value(embed.getFooter().getIconUrl());
+            }
+            writer.endObject();
+        }
+        if (embed.getThumbnailUrl() != null) {
+            writer.name("thumbnail").beginObject().name("url").value(embed.getThumbnailUrl()).endObject();
+        }
+        if (embed.getImageUrl() != null) {
+            writer.name("image").beginObject().name("url").value(embed.getImageUrl()).endObject();
+        }
+        if (embed.getAuthor() != null) {
+            writer.name("author").beginObject().name("name").value(embed.getAuthor().getName());
+            if (embed.getAuthor().getUrl() != null) {
+                writer.name("url").value(embed.getAuthor().getUrl());
+            }
+            if (embed.getAuthor().getIconUrl() != null) {
+                writer.name("icon_url").value(embed.getAuthor().getIconUrl());
+            }
+            writer.endObject();
+        }
+        writer.name("fields").beginArray();
+        for (final WebhookEmbed.EmbedField field : embed.getFields()) {
+            writer.beginObject()
+                .name("name").value(field.getName())
+                .name("value").value(field.getValue())
+                .name("inline").value(field.isInline())
+                .endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
 }
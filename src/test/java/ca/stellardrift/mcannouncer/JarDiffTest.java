@@ -0,0 +1,117 @@
+package ca.stellardrift.mcannouncer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JarDiffTest {
+    @TempDir
+    Path temp;
+
+    @Test
+    void readsCentralDirectory() throws IOException {
+        final Path jar = this.jar("entries.jar", Map.of(
+            "a/A.class", "class A",
+            "data.txt", "some data"
+        ), false);
+
+        final Map<String, JarDiff.Entry> entries = JarDiff.read(jar);
+        assertEquals(2, entries.size());
+        assertEquals(new JarDiff.Entry(crc("class A"), 7), entries.get("a/A.class"));
+        assertEquals(new JarDiff.Entry(crc("some data"), 9), entries.get("data.txt"));
+    }
+
+    @Test
+    void countsAddedRemovedAndChangedEntries() throws IOException {
+        final Map<String, String> original = new LinkedHashMap<>();
+        original.put("a/A.class", "class A");
+        original.put("a/B.class", "class B");
+        original.put("a/Gone.class", "class Gone");
+        original.put("assets/old.json", "{}");
+        original.put("data.txt", "some data");
+
+        final Map<String, String> modified = new LinkedHashMap<>();
+        modified.put("a/A.class", "class A");
+        modified.put("a/B.class", "class B, revised");
+        modified.put("a/New.class", "class New");
+        modified.put("data.txt", "some data");
+        modified.put("assets/new.json", "[]");
+
+        final JarDiff diff = JarDiff.compare(
+            JarDiff.read(this.jar("original.jar", original, false)),
+            JarDiff.read(this.jar("modified.jar", modified, false))
+        );
+        assertEquals(new JarDiff.Counts(1, 1, 1), diff.classes());
+        assertEquals(new JarDiff.Counts(1, 1, 0), diff.resources());
+    }
+
+    @Test
+    void entriesWithTheSameCrcAreUnchanged() throws IOException {
+        final Map<String, String> entries = Map.of(
+            "a/A.class", "class A",
+            "data.txt", "some data, ".repeat(100)
+        );
+
+        // the same contents stored rather than deflated, so only the compressed data differs
+        final JarDiff diff = JarDiff.compare(
+            JarDiff.read(this.jar("deflated.jar", entries, false)),
+            JarDiff.read(this.jar("stored.jar", entries, true))
+        );
+        assertTrue(diff.classes().isEmpty());
+        assertTrue(diff.resources().isEmpty());
+        assertEquals(List.of(), diff.lines());
+    }
+
+    @Test
+    void comparesJarsOnDisk() throws Exception {
+        final Path original = this.jar("original.jar", Map.of("a/A.class", "class A"), false);
+        final Path modified = this.jar("modified.jar", Map.of("a/A.class", "class A, revised", "data.txt", "some data"), false);
+
+        final JarDiff diff = JarDiff.compare(original, modified, Runnable::run).get();
+        assertEquals(new JarDiff.Counts(0, 0, 1), diff.classes());
+        assertEquals(new JarDiff.Counts(1, 0, 0), diff.resources());
+        assertEquals(List.of("__Classes__: 1 changed", "__Resources__: 1 added"), diff.lines());
+    }
+
+    private Path jar(final String name, final Map<String, String> entries, final boolean stored) throws IOException {
+        final Path jar = this.temp.resolve(name);
+        try (final OutputStream out = Files.newOutputStream(jar);
+             final ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (final Map.Entry<String, String> entry : entries.entrySet()) {
+                final byte[] contents = entry.getValue().getBytes(StandardCharsets.UTF_8);
+                final ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                if (stored) {
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(contents.length);
+                    zipEntry.setCompressedSize(contents.length);
+                    zipEntry.setCrc(crc(entry.getValue()));
+                }
+                zip.putNextEntry(zipEntry);
+                zip.write(contents);
+                zip.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static int crc(final String contents) {
+        final CRC32 crc = new CRC32();
+        crc.update(contents.getBytes(StandardCharsets.UTF_8));
+        return (int) crc.getValue();
+    }
+
+}